@@ -0,0 +1,335 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/** Writes the files of a commit as a tar or zip archive, copying each
+ * blob straight from the object store to the output through one small
+ * buffer, so that neither the working directory nor the size of the
+ * tree affects the cost beyond the copying itself. A compressed tar is
+ * cut into fixed-size pieces that are compressed on several threads at
+ * once, each as a gzip member of its own; concatenated members form a
+ * valid gzip stream. At most a few pieces per thread are in memory at
+ * any time.
+ * @author Max Miranda */
+class Archive {
+
+    /** Names of the formats. */
+    static final String TAR = "tar", TGZ = "tar.gz", ZIP = "zip";
+
+    /** An archive in the format FORMAT of the files of the commit UID,
+     * made at MTIME (milliseconds since the epoch). */
+    Archive(String format, String uid, long mtime) {
+        _format = format;
+        _uid = uid;
+        _mtime = mtime;
+    }
+
+    /** Returns true iff FORMAT names a format. */
+    static boolean isFormat(String format) {
+        return format.equals(TAR) || format.equals(TGZ)
+            || format.equals(ZIP);
+    }
+
+    /** Returns the format suggested by the name of the file NAME. */
+    static String formatOf(String name) {
+        if (name.endsWith(".zip")) {
+            return ZIP;
+        } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            return TGZ;
+        }
+        return TAR;
+    }
+
+    /** Writes FILES, which maps file names to blob ids in order, to
+     * OUT. */
+    void write(SortedMap<String, String> files, OutputStream out)
+        throws IOException {
+        switch (_format) {
+        case ZIP:
+            writeZip(files, out);
+            break;
+        case TGZ:
+            try (ParallelGzip gzip = new ParallelGzip(out)) {
+                writeTar(files, gzip);
+            }
+            break;
+        default:
+            writeTar(files, out);
+        }
+        out.flush();
+    }
+
+    /** Writes FILES as a tar archive to OUT. The archive opens with a
+     * global header recording the commit, as git archive does. */
+    private void writeTar(SortedMap<String, String> files, OutputStream out)
+        throws IOException {
+        byte[] global = pax("comment", _uid);
+        out.write(header("pax_global_header", global.length, 'g'));
+        copyPadded(new ByteArrayInputStream(global), out);
+        long written = BLOCK + padded(global.length);
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            File blob = Lfs.content(e.getValue());
+            String name = e.getKey();
+            long size = blob.length();
+            byte[] name8 = name.getBytes(StandardCharsets.UTF_8);
+            if (name8.length > NAME_LENGTH || size > MAX_SIZE) {
+                ByteArrayOutputStream ext = new ByteArrayOutputStream();
+                if (name8.length > NAME_LENGTH) {
+                    ext.write(pax("path", name));
+                    name = "gitlet-long-name";
+                }
+                if (size > MAX_SIZE) {
+                    ext.write(pax("size", Long.toString(size)));
+                }
+                out.write(header(name, ext.size(), 'x'));
+                copyPadded(new ByteArrayInputStream(ext.toByteArray()),
+                           out);
+                written += BLOCK + padded(ext.size());
+            }
+            out.write(header(name, Math.min(size, MAX_SIZE), '0'));
+            try (InputStream in = new FileInputStream(blob)) {
+                copyPadded(in, out);
+            }
+            written += BLOCK + padded(size);
+        }
+        written += 2 * BLOCK;
+        long end = (written + RECORD - 1) / RECORD * RECORD;
+        byte[] zeros = new byte[BLOCK];
+        for (long n = written - 2 * BLOCK; n < end; n += BLOCK) {
+            out.write(zeros);
+        }
+    }
+
+    /** Writes FILES as a zip archive to OUT, with the commit as the
+     * archive's comment. */
+    private void writeZip(SortedMap<String, String> files, OutputStream out)
+        throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out,
+                                                  StandardCharsets.UTF_8);
+        zip.setComment(_uid);
+        byte[] buffer = new byte[BUFFER];
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            ZipEntry entry = new ZipEntry(e.getKey());
+            entry.setTime(_mtime);
+            zip.putNextEntry(entry);
+            File blob = Lfs.content(e.getValue());
+            try (InputStream in = new FileInputStream(blob)) {
+                for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    zip.write(buffer, 0, n);
+                }
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /** Returns the ustar header of an entry named NAME, of SIZE bytes
+     * and of type TYPE. */
+    private byte[] header(String name, long size, char type) {
+        byte[] header = new byte[BLOCK];
+        field(header, 0, NAME_LENGTH, name);
+        field(header, 100, 8, "0000644");
+        field(header, 108, 8, "0000000");
+        field(header, 116, 8, "0000000");
+        field(header, 124, 12, String.format("%011o", size));
+        field(header, 136, 12, String.format("%011o", _mtime / 1000));
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        header[156] = (byte) type;
+        field(header, 257, 6, "ustar");
+        field(header, 263, 2, "00");
+        field(header, 265, 32, "gitlet");
+        field(header, 297, 32, "gitlet");
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        field(header, 148, 7, String.format("%06o", sum));
+        return header;
+    }
+
+    /** Copies VALUE into the field of HEADER of WIDTH bytes that
+     * starts at START. */
+    private static void field(byte[] header, int start, int width,
+                              String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, header, start,
+                         Math.min(bytes.length, width));
+    }
+
+    /** Returns the pax extended header record setting KEY to VALUE.
+     * The record begins with its own length in decimal. */
+    private static byte[] pax(String key, String value) {
+        int body = (" " + key + "=" + value + "\n")
+            .getBytes(StandardCharsets.UTF_8).length;
+        int length = body + 1;
+        while (Integer.toString(length).length() + body != length) {
+            length += 1;
+        }
+        return (length + " " + key + "=" + value + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Copies IN to OUT, followed by zeros up to a whole block. */
+    private static void copyPadded(InputStream in, OutputStream out)
+        throws IOException {
+        byte[] buffer = new byte[BUFFER];
+        long total = 0;
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+            total += n;
+        }
+        out.write(new byte[(int) (padded(total) - total)]);
+    }
+
+    /** Returns SIZE rounded up to a whole number of blocks. */
+    private static long padded(long size) {
+        return (size + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    /** An output stream that gzips what is written to it, in pieces
+     * compressed in parallel and written in order. */
+    private static class ParallelGzip extends OutputStream {
+
+        /** A stream writing compressed data to OUT. */
+        ParallelGzip(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, _piece.length - _filled);
+                System.arraycopy(b, off, _piece, _filled, n);
+                _filled += n;
+                off += n;
+                len -= n;
+                if (_filled == _piece.length) {
+                    submit();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (_filled > 0) {
+                    submit();
+                }
+                while (!_pending.isEmpty()) {
+                    drain();
+                }
+                _out.flush();
+            } finally {
+                _pool.shutdownNow();
+            }
+        }
+
+        /** Starts compressing the current piece, first writing out the
+         * oldest pieces if too many are in flight. */
+        private void submit() throws IOException {
+            while (_pending.size() >= IN_FLIGHT) {
+                drain();
+            }
+            byte[] piece = _piece;
+            int length = _filled;
+            _pending.add(_pool.submit(() -> {
+                ByteArrayOutputStream result =
+                    new ByteArrayOutputStream(length / 2);
+                try (GZIPOutputStream gzip = new GZIPOutputStream(result)) {
+                    gzip.write(piece, 0, length);
+                }
+                return result.toByteArray();
+            }));
+            _piece = new byte[PIECE];
+            _filled = 0;
+        }
+
+        /** Writes out the oldest piece, waiting for it if need be. */
+        private void drain() throws IOException {
+            try {
+                _out.write(_pending.remove().get());
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IOException(excp);
+            }
+        }
+
+        /** Number of compressing threads. */
+        private static final int THREADS =
+            Runtime.getRuntime().availableProcessors();
+
+        /** Number of pieces held at once. */
+        private static final int IN_FLIGHT = 2 * THREADS;
+
+        /** Size of an uncompressed piece. */
+        private static final int PIECE = 1 << 20;
+
+        /** Destination of the compressed data. */
+        private final OutputStream _out;
+
+        /** Compressing threads. */
+        private final ExecutorService _pool =
+            Executors.newFixedThreadPool(THREADS, r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            });
+
+        /** Pieces being compressed, oldest first. */
+        private final Deque<Future<byte[]>> _pending =
+            new ArrayDeque<Future<byte[]>>();
+
+        /** The piece being filled. */
+        private byte[] _piece = new byte[PIECE];
+
+        /** Number of bytes in _piece. */
+        private int _filled;
+    }
+
+    /** Size of a tar block. */
+    private static final int BLOCK = 512;
+
+    /** Size of a tar record; archives are padded to a whole one. */
+    private static final int RECORD = 20 * BLOCK;
+
+    /** Longest name a ustar header holds. */
+    private static final int NAME_LENGTH = 100;
+
+    /** Largest size a ustar header holds. */
+    private static final long MAX_SIZE = 077777777777L;
+
+    /** Size of the copying buffer. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Format of the archive. */
+    private final String _format;
+
+    /** Commit being archived. */
+    private final String _uid;
+
+    /** Modification time given to every file. */
+    private final long _mtime;
+}
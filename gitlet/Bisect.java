@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The state of a bisection: a binary search of the commit graph for
+ * the first commit that is bad. The commits still in question are
+ * those that are ancestors of the bad commit (or the bad commit
+ * itself) but not of any good one. Each step picks the candidate that
+ * splits them most evenly, so every answer rules out about half.
+ * @author Max Miranda */
+class Bisect implements Serializable {
+
+    /** A bisection of a branch whose head was ORIGINAL when it
+     * started. */
+    Bisect(String original) {
+        _original = original;
+    }
+
+    /** Returns the commit the branch pointed to before bisecting. */
+    String getOriginal() {
+        return _original;
+    }
+
+    /** Returns the commit being tested, or null. */
+    String getCurrent() {
+        return _current;
+    }
+
+    /** Makes UID the commit being tested, and counts the test. */
+    void setCurrent(String uid) {
+        _current = uid;
+        _steps += 1;
+    }
+
+    /** Returns the commits this bisection refers to: the original head,
+     * the commit being tested, and those marked good and bad. */
+    List<String> roots() {
+        List<String> result = new ArrayList<String>(_good);
+        result.add(_original);
+        if (_current != null) {
+            result.add(_current);
+        }
+        if (_bad != null) {
+            result.add(_bad);
+        }
+        return result;
+    }
+
+    /** Returns the number of commits tested so far. */
+    int getSteps() {
+        return _steps;
+    }
+
+    /** Returns the number of commits that were in question when both
+     * a good and a bad commit were first known: the number a linear
+     * scan might have had to test. */
+    int getInitialCount() {
+        return _initialCount;
+    }
+
+    /** Marks UID bad. */
+    void markBad(String uid) {
+        _bad = uid;
+    }
+
+    /** Marks UID good. */
+    void markGood(String uid) {
+        _good.add(uid);
+    }
+
+    /** Marks UID as impossible to test. */
+    void markSkipped(String uid) {
+        _skipped.add(uid);
+    }
+
+    /** Replaces every commit id this bisection refers to by its new
+     * id in RENAMES, which maps old commit ids to new ones. */
+    void rename(Map<String, String> renames) {
+        _original = renames.getOrDefault(_original, _original);
+        if (_current != null) {
+            _current = renames.getOrDefault(_current, _current);
+        }
+        if (_bad != null) {
+            _bad = renames.getOrDefault(_bad, _bad);
+        }
+        renameAll(_good, renames);
+        renameAll(_skipped, renames);
+    }
+
+    /** Replaces each id in IDS by its new id in RENAMES. */
+    private static void renameAll(Set<String> ids,
+                                  Map<String, String> renames) {
+        List<String> old = new ArrayList<String>(ids);
+        ids.clear();
+        for (String uid : old) {
+            ids.add(renames.getOrDefault(uid, uid));
+        }
+    }
+
+    /** Returns true iff both a bad and a good commit are known. */
+    boolean isReady() {
+        return _bad != null && !_good.isEmpty();
+    }
+
+    /** Returns the commits still in question, loading commits from
+     * REPO. */
+    Set<String> candidates(Repo repo) {
+        Set<String> excluded = ancestors(repo, _good, null);
+        Set<String> result = ancestors(repo, List.of(_bad), excluded);
+        if (_initialCount == 0) {
+            _initialCount = result.size();
+        }
+        return result;
+    }
+
+    /** Returns the first bad commit if CANDIDATES, the commits still in
+     * question, pin it down, or null otherwise. */
+    String firstBad(Set<String> candidates) {
+        return candidates.size() == 1 ? _bad : null;
+    }
+
+    /** Returns the next commit to test among CANDIDATES, loading
+     * commits from REPO, or null if only skipped commits are left.
+     * The choice maximizes min(n, N - n), where N is the number of
+     * candidates and n the number of them that are ancestors of the
+     * choice (itself included): whatever the answer, at least that
+     * many candidates are ruled out. */
+    String next(Repo repo, Set<String> candidates) {
+        Map<String, List<String>> parents =
+            new HashMap<String, List<String>>();
+        boolean linear = true;
+        for (String uid : candidates) {
+            List<String> inside = new ArrayList<String>();
+            String[] ps = repo.isShallow(uid) ? null
+                : repo.uidToCommit(uid).getParents();
+            if (ps != null) {
+                for (String p : ps) {
+                    if (candidates.contains(p)) {
+                        inside.add(p);
+                    }
+                }
+            }
+            linear &= inside.size() <= 1;
+            parents.put(uid, inside);
+        }
+        Map<String, Integer> below = linear ? chainCounts(parents)
+            : walkCounts(parents);
+        int total = candidates.size();
+        String best = null;
+        int bestScore = -1;
+        for (String uid : candidates) {
+            int n = below.get(uid);
+            int score = Math.min(n, total - n);
+            if (!_skipped.contains(uid) && !uid.equals(_bad)
+                && score > bestScore) {
+                best = uid;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /** Returns, for each commit in PARENTS, which maps each candidate
+     * to its parents among the candidates, the number of candidates
+     * that are it or its ancestors, when the candidates form a single
+     * chain. Takes time linear in the number of candidates. */
+    private static Map<String, Integer> chainCounts(
+            Map<String, List<String>> parents) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (String uid : parents.keySet()) {
+            Deque<String> chain = new ArrayDeque<String>();
+            String cur = uid;
+            while (!result.containsKey(cur)) {
+                chain.push(cur);
+                List<String> ps = parents.get(cur);
+                if (ps.isEmpty()) {
+                    break;
+                }
+                cur = ps.get(0);
+            }
+            int n = result.getOrDefault(cur, 0);
+            while (!chain.isEmpty()) {
+                String c = chain.pop();
+                if (!result.containsKey(c)) {
+                    n += 1;
+                    result.put(c, n);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** As for chainCounts(PARENTS), but for any graph, by walking the
+     * ancestry of each candidate separately. */
+    private static Map<String, Integer> walkCounts(
+            Map<String, List<String>> parents) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (String uid : parents.keySet()) {
+            Set<String> seen = new HashSet<String>();
+            Deque<String> queue = new ArrayDeque<String>();
+            queue.add(uid);
+            while (!queue.isEmpty()) {
+                String cur = queue.poll();
+                if (seen.add(cur)) {
+                    queue.addAll(parents.get(cur));
+                }
+            }
+            result.put(uid, seen.size());
+        }
+        return result;
+    }
+
+    /** Returns the commits in ROOTS and all of their ancestors, loading
+     * commits from REPO and not going into STOP (which may be null). */
+    private static Set<String> ancestors(Repo repo,
+                                         Iterable<String> roots,
+                                         Set<String> stop) {
+        Set<String> result = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        for (String root : roots) {
+            queue.add(root);
+        }
+        while (!queue.isEmpty()) {
+            String uid = queue.poll();
+            if ((stop != null && stop.contains(uid)) || !result.add(uid)) {
+                continue;
+            }
+            String[] ps = repo.uidToCommit(uid).getParents();
+            if (ps != null && !repo.isShallow(uid)) {
+                for (String p : ps) {
+                    queue.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Pinned so that a bisection survives changes to this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** Head of the bisected branch before bisecting started. */
+    private String _original;
+
+    /** Commit being tested. */
+    private String _current;
+
+    /** Commit known to be bad. */
+    private String _bad;
+
+    /** Commits known to be good. */
+    private final HashSet<String> _good = new HashSet<String>();
+
+    /** Commits that could not be tested. */
+    private final HashSet<String> _skipped = new HashSet<String>();
+
+    /** Number of commits tested. */
+    private int _steps;
+
+    /** Number of commits in question when bisection could first start. */
+    private int _initialCount;
+}
@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Attributes each line of a file to the commit that last changed it.
+ * History is followed through the commits at which the file's blob
+ * changed, as recorded by a per-path index kept under .gitlet/blame:
+ * for every commit seen, the commit that introduced the blob it has,
+ * and for each of those, its blob and the previous such commit. The
+ * index grows incrementally, so a later blame only looks at commits
+ * made since the last. Lines are then carried from the newest version
+ * back through older ones, diffing each adjacent pair once, until every
+ * line has found its commit.
+ * @author Max Miranda */
+class Blame implements Serializable {
+
+    /** Returns, for each line of the file PATH as of commit TIP in
+     * REPO, the id of the commit that introduced that line, followed by
+     * the line. */
+    static List<String[]> annotate(Repo repo, String path, String tip) {
+        File cache = new File(dir(), Utils.sha1(path));
+        Blame index = cache.exists()
+            ? Utils.readObject(cache, Blame.class) : new Blame();
+        if (index.extend(repo, path, tip)) {
+            dir().mkdirs();
+            Utils.writeObject(cache, index);
+        }
+        return index.attribute(repo, tip);
+    }
+
+    /** Brings this index of PATH up to date with the history of commit
+     * TIP in REPO. Returns true iff anything was added. */
+    private boolean extend(Repo repo, String path, String tip) {
+        List<String> walk = new ArrayList<String>();
+        HashMap<String, String> blobs = new HashMap<String, String>();
+        HashMap<String, String> next = new HashMap<String, String>();
+        String cur = tip;
+        while (cur != null && !_changes.containsKey(cur)) {
+            walk.add(cur);
+            Commit comm = repo.uidToCommit(cur);
+            String blob = comm.getFiles().get(path);
+            blobs.put(cur, blob);
+            String[] parents = repo.isShallow(cur) ? null
+                : comm.getParents();
+            String follow = null;
+            if (parents != null) {
+                for (String parent : parents) {
+                    String theirs = blobOf(repo, parent, path);
+                    if (blob.equals(theirs)) {
+                        follow = parent;
+                        break;
+                    } else if (follow == null && theirs != null
+                               && parent.equals(parents[0])) {
+                        follow = parent;
+                    }
+                }
+            }
+            next.put(cur, follow);
+            cur = follow;
+        }
+        for (int i = walk.size() - 1; i >= 0; i -= 1) {
+            String uid = walk.get(i);
+            String parent = next.get(uid);
+            String blob = blobs.get(uid);
+            if (parent == null) {
+                _changes.put(uid, uid);
+                _versions.put(uid, new String[] {blob, null});
+            } else {
+                String change = _changes.get(parent);
+                if (blob.equals(_versions.get(change)[0])) {
+                    _changes.put(uid, change);
+                } else {
+                    _changes.put(uid, uid);
+                    _versions.put(uid, new String[] {blob, change});
+                }
+            }
+        }
+        return !walk.isEmpty();
+    }
+
+    /** Returns the blob PATH has in commit UID in REPO, or null. Uses
+     * the index when it can, to save reading the commit. */
+    private String blobOf(Repo repo, String uid, String path) {
+        String change = _changes.get(uid);
+        if (change != null) {
+            return _versions.get(change)[0];
+        }
+        HashMap<String, String> files = repo.uidToCommit(uid).getFiles();
+        return files == null ? null : files.get(path);
+    }
+
+    /** Returns the lines of this index's file as of commit TIP in REPO,
+     * each preceded by the commit that introduced it. */
+    private List<String[]> attribute(Repo repo, String tip) {
+        String change = _changes.get(tip);
+        List<String> lines = lines(repo, _versions.get(change)[0]);
+        String[] owners = new String[lines.size()];
+        int[] position = new int[lines.size()];
+        for (int i = 0; i < position.length; i += 1) {
+            position[i] = i;
+        }
+        int left = owners.length;
+        List<String> current = lines;
+        while (left > 0) {
+            String previous = _versions.get(change)[1];
+            List<String> older = previous == null ? new ArrayList<String>()
+                : lines(repo, _versions.get(previous)[0]);
+            int[] match = Diff.match(older, current);
+            for (int i = 0; i < owners.length; i += 1) {
+                if (owners[i] == null) {
+                    int from = match[position[i]];
+                    if (from < 0) {
+                        owners[i] = change;
+                        left -= 1;
+                    } else {
+                        position[i] = from;
+                    }
+                }
+            }
+            change = previous;
+            current = older;
+        }
+        List<String[]> result = new ArrayList<String[]>();
+        for (int i = 0; i < owners.length; i += 1) {
+            result.add(new String[] {owners[i], lines.get(i)});
+        }
+        return result;
+    }
+
+    /** Returns the lines of the blob with id ID in REPO. */
+    private static List<String> lines(Repo repo, String id) {
+        String text = new String(repo.readBlob(id), StandardCharsets.UTF_8);
+        if (text.isEmpty()) {
+            return new ArrayList<String>();
+        }
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return new ArrayList<String>(Arrays.asList(text.split("\n", -1)));
+    }
+
+    /** Returns the directory holding the index of each path. */
+    private static File dir() {
+        return new File(Worktree.common(), "blame");
+    }
+
+    /** Pinned so that indexes survive changes to this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** Maps each commit seen to the commit that introduced its blob. */
+    private final HashMap<String, String> _changes =
+        new HashMap<String, String>();
+
+    /** Maps each commit that introduced a blob to that blob and the
+     * previous commit that did, or null. */
+    private final HashMap<String, String[]> _versions =
+        new HashMap<String, String[]>();
+}
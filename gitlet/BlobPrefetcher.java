@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/** Writes a batch of blobs into the working directory as a two
+ * stage pipeline: a background thread reads (or maps) upcoming
+ * blobs while the calling thread writes the ones already read.
+ * The queue between the stages is bounded, so a slow writer holds
+ * the reader back instead of pulling the whole batch into memory.
+ * @author Max Miranda */
+class BlobPrefetcher {
+
+    /** Writes every file named in FILES, which maps working file
+     * names to blob ids, with the contents of its blob, into the
+     * working directory WORK, or the current one if WORK is null.
+     * Whatever the reader throws is carried to the writer and thrown
+     * here, so the writer never waits on a reader that has died. */
+    static void materialize(Map<String, String> files, File work) {
+        if (files == null || files.isEmpty()) {
+            return;
+        }
+        BlockingQueue<Blob> queue = new ArrayBlockingQueue<Blob>(DEPTH);
+        Thread reader = new Thread(() -> {
+            try {
+                for (Map.Entry<String, String> e : files.entrySet()) {
+                    queue.put(read(new File(work, e.getKey()),
+                                   e.getValue()));
+                }
+                queue.put(DONE);
+            } catch (InterruptedException excp) {
+                return;
+            } catch (Throwable excp) {
+                try {
+                    queue.put(new Blob(null, null, excp));
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }, "gitlet-prefetch");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            for (Blob blob = queue.take(); blob != DONE;
+                 blob = queue.take()) {
+                if (blob.error instanceof RuntimeException) {
+                    throw (RuntimeException) blob.error;
+                } else if (blob.error instanceof Error) {
+                    throw (Error) blob.error;
+                } else if (blob.error != null) {
+                    throw new IllegalArgumentException(blob.error);
+                }
+                write(blob);
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            reader.interrupt();
+        }
+    }
+
+    /** Returns the contents of the blob with id ID, destined for the
+     * working file NAME. Large blobs are mapped rather than copied
+     * onto the heap. Failures are carried to the writer. */
+    private static Blob read(File name, String id) {
+        File f = Lfs.content(id);
+        try (FileChannel in = FileChannel.open(f.toPath())) {
+            long size = in.size();
+            ByteBuffer data;
+            if (size >= MAP_THRESHOLD) {
+                data = in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                data = ByteBuffer.allocate((int) size);
+                while (data.hasRemaining() && in.read(data) >= 0) {
+                    continue;
+                }
+                data.flip();
+            }
+            return new Blob(name, data, null);
+        } catch (IOException excp) {
+            return new Blob(name, null,
+                            new IllegalArgumentException(excp.getMessage()));
+        }
+    }
+
+    /** Writes BLOB to its working file, replacing any old one. The old
+     * file is removed rather than truncated, since it may be a link
+     * to a blob. */
+    private static void write(Blob blob) {
+        File f = blob.name;
+        f.delete();
+        try (FileChannel out = FileChannel.open(f.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (blob.data.hasRemaining()) {
+                out.write(blob.data);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** A blob read by the prefetch stage. */
+    private static class Blob {
+        /** A blob for working file NAME holding DATA, or the ERROR
+         * encountered reading it. */
+        Blob(File name, ByteBuffer data, Throwable error) {
+            this.name = name;
+            this.data = data;
+            this.error = error;
+        }
+
+        /** Working file. */
+        private final File name;
+
+        /** Contents. */
+        private final ByteBuffer data;
+
+        /** Failure while reading, or null. */
+        private final Throwable error;
+    }
+
+    /** Marks the end of the batch. */
+    private static final Blob DONE = new Blob(null, null, null);
+
+    /** Number of blobs the reader may run ahead of the writer. */
+    private static final int DEPTH = 16;
+
+    /** Blobs at least this many bytes long are memory-mapped. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+}
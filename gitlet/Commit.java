@@ -1,6 +1,7 @@
 package gitlet;
 import java.util.Date;
 import java.io.Serializable;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -25,18 +26,106 @@ public class Commit implements Serializable {
         _universalID = hashCommit();
     }
 
+    /** A commit with message M, files F, and parents P, made at
+     * TIMESTAMP. Used to rewrite existing commits. */
+    Commit(String m, HashMap<String, String> f, String[] p,
+           String timestamp) {
+        _message = m;
+        _files = f;
+        _parents = p;
+        _timestamp = timestamp;
+        _universalID = hashCommit();
+    }
+
     /** This function will hash the current commit based off
      * of the commit message, files, timestamp, and parents.
-     * To return a hash. */
+     * To return a hash. The fields are fed to the digest one at a
+     * time in a fixed order, each followed by a NUL byte, with the
+     * files sorted by name, so the hash depends only on the contents
+     * of the commit and not on how its map happens to be laid out.
+     * The fields are encoded and the names sorted in scratch arrays
+     * each thread keeps, as Hashing keeps its digests. */
     public String hashCommit() {
-        String files;
-        if (_files == null) {
-            files = "";
-        } else {
-            files = _files.toString();
+        MessageDigest md = Hashing.digest();
+        digest(md, "commit");
+        digest(md, _message);
+        digest(md, _timestamp);
+        if (_parents != null) {
+            for (String parent : _parents) {
+                digest(md, "parent");
+                digest(md, parent);
+            }
+        }
+        if (_files != null) {
+            int count = _files.size();
+            String[] names = NAMES.get();
+            if (names.length < count) {
+                names = new String[Math.max(count, 2 * names.length)];
+                NAMES.set(names);
+            }
+            _files.keySet().toArray(names);
+            Arrays.sort(names, 0, count);
+            for (int i = 0; i < count; i += 1) {
+                digest(md, "file");
+                digest(md, names[i]);
+                digest(md, _files.get(names[i]));
+            }
+            Arrays.fill(names, 0, count, null);
         }
-        String parents = Arrays.toString(_parents);
-        return Utils.sha1(_message, files, _timestamp, parents);
+        return Hashing.toHex(md.digest());
+    }
+
+    /** Returns the id an earlier version of gitlet gave this commit: the
+     * SHA-1 hash of its message, files, timestamp and parents, as
+     * written by their toString methods. Commits stored under such ids
+     * are rewritten by migrate. */
+    String legacyHash() {
+        String files = _files == null ? "" : _files.toString();
+        return Hashing.hash(Hashing.SHA1, _message, files, _timestamp,
+                            Arrays.toString(_parents));
+    }
+
+    /** Feeds S, encoded as UTF-8 through this thread's scratch
+     * buffer, and then a NUL byte, to MD. An unpaired surrogate is
+     * encoded as '?', as String.getBytes does. */
+    private static void digest(MessageDigest md, String s) {
+        byte[] buf = ENCODED.get();
+        int n = 0;
+        for (int i = 0; i < s.length(); i += 1) {
+            if (n > buf.length - 4) {
+                md.update(buf, 0, n);
+                n = 0;
+            }
+            int c = s.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, s.charAt(i + 1));
+                i += 1;
+            } else if (Character.isSurrogate((char) c)) {
+                c = '?';
+            }
+            if (c < 0x80) {
+                buf[n] = (byte) c;
+                n += 1;
+            } else if (c < 0x800) {
+                buf[n] = (byte) (0xc0 | c >> 6);
+                buf[n + 1] = (byte) (0x80 | c & 0x3f);
+                n += 2;
+            } else if (c < 0x10000) {
+                buf[n] = (byte) (0xe0 | c >> 12);
+                buf[n + 1] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[n + 2] = (byte) (0x80 | c & 0x3f);
+                n += 3;
+            } else {
+                buf[n] = (byte) (0xf0 | c >> 18);
+                buf[n + 1] = (byte) (0x80 | c >> 12 & 0x3f);
+                buf[n + 2] = (byte) (0x80 | c >> 6 & 0x3f);
+                buf[n + 3] = (byte) (0x80 | c & 0x3f);
+                n += 4;
+            }
+        }
+        md.update(buf, 0, n);
+        md.update((byte) 0);
     }
 
     /** Returns one to get the commit message of this
@@ -99,6 +188,21 @@ public class Commit implements Serializable {
     /** The hash of this commit. */
     private String _universalID;
 
+    /** Pinned so that commits written by earlier versions of gitlet
+     * can still be read. */
+    private static final long serialVersionUID = -2274242018237023650L;
+
+    /** Size of the scratch buffer used to encode fields for hashing. */
+    private static final int ENCODE_BUFFER = 256;
+
+    /** Each thread's scratch buffer for encoding fields to hash. */
+    private static final ThreadLocal<byte[]> ENCODED =
+        ThreadLocal.withInitial(() -> new byte[ENCODE_BUFFER]);
+
+    /** Each thread's scratch array for sorting file names to hash. */
+    private static final ThreadLocal<String[]> NAMES =
+        ThreadLocal.withInitial(() -> new String[ENCODE_BUFFER]);
+
     /** The date format. */
     public static final SimpleDateFormat DATE_FORMAT =
             new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy");
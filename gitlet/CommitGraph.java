@@ -0,0 +1,323 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/** The commit graph: for each commit, its parents and a Bloom filter
+ * of the paths it changed relative to its first parent, so that
+ * history can be walked, and the commits that cannot have touched a
+ * path passed over, without reading the commits themselves. Entries
+ * are appended to .gitlet/commit-graph as commits are made, and as
+ * older commits are first walked over; since a commit never changes,
+ * neither does its entry. Each entry holds the commit's id, its
+ * parents' ids, and its filter as a count of longs (-1 if the commit
+ * changed too many paths to be worth filtering) followed by the longs.
+ * @author Max Miranda */
+class CommitGraph {
+
+    /** Returns the graph of the repository in the current directory.
+     * An entry cut short by a crash while it was appended is ignored. */
+    static CommitGraph read() {
+        CommitGraph graph = new CommitGraph();
+        File f = file();
+        if (!f.isFile()) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(f), BUFFER))) {
+            if (in.readInt() != MAGIC) {
+                return graph;
+            }
+            while (true) {
+                String uid = in.readUTF();
+                String[] parents = new String[in.readUnsignedByte()];
+                for (int i = 0; i < parents.length; i += 1) {
+                    parents[i] = in.readUTF();
+                }
+                int length = in.readInt();
+                long[] filter = length < 0 ? null : new long[length];
+                for (int i = 0; i < length; i += 1) {
+                    filter[i] = in.readLong();
+                }
+                graph._entries.put(uid, new Entry(parents, filter));
+            }
+        } catch (EOFException excp) {
+            return graph;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Records that the commit UID, whose parents are PARENTS (null for
+     * none), changed at most the paths CHANGED relative to the first of
+     * them. */
+    static void record(String uid, String[] parents,
+                       Collection<String> changed) {
+        Entry entry = new Entry(parents == null ? new String[0] : parents,
+                                filter(changed));
+        append(Map.of(uid, entry));
+    }
+
+    /** Returns the parents of the commit UID in REPO, entering it in
+     * the graph if it is not there yet. */
+    String[] parents(Repo repo, String uid) {
+        return entry(repo, uid).parents;
+    }
+
+    /** Returns true iff the commit UID in REPO changed the file PATH
+     * relative to its first parent. The commit is read only if its
+     * filter cannot rule that out. */
+    boolean changed(Repo repo, String uid, String path) {
+        Entry entry = entry(repo, uid);
+        if (entry.filter != null && !contains(entry.filter, path)) {
+            return false;
+        }
+        String parent = entry.parents.length == 0 || repo.isShallow(uid)
+            ? null : entry.parents[0];
+        return !Objects.equals(files(repo, uid).get(path),
+                               parent == null ? null
+                               : files(repo, parent).get(path));
+    }
+
+    /** Appends the entries made since this graph was read. */
+    void write() {
+        if (!_added.isEmpty()) {
+            append(_added);
+            _added.clear();
+        }
+    }
+
+    /** Returns the entry for UID in REPO, reading the commit and its
+     * first parent to make one if there is none. */
+    private Entry entry(Repo repo, String uid) {
+        Entry entry = _entries.get(uid);
+        if (entry == null) {
+            String[] parents = repo.uidToCommit(uid).getParents();
+            parents = parents == null ? new String[0] : parents;
+            Map<String, String> mine = files(repo, uid);
+            Map<String, String> theirs = parents.length == 0
+                || repo.isShallow(uid) ? new HashMap<String, String>()
+                : files(repo, parents[0]);
+            Set<String> changed = new HashSet<String>();
+            for (Map.Entry<String, String> e : mine.entrySet()) {
+                if (!e.getValue().equals(theirs.get(e.getKey()))) {
+                    changed.add(e.getKey());
+                }
+            }
+            for (String name : theirs.keySet()) {
+                if (!mine.containsKey(name)) {
+                    changed.add(name);
+                }
+            }
+            entry = new Entry(parents, filter(changed));
+            _entries.put(uid, entry);
+            _added.put(uid, entry);
+        }
+        return entry;
+    }
+
+    /** Returns the files of the commit UID in REPO. The two most
+     * recently read are kept, since a walk reads each commit first as
+     * a child and then as a parent. */
+    private Map<String, String> files(Repo repo, String uid) {
+        Map<String, String> files = _recent.get(uid);
+        if (files == null) {
+            files = repo.treeOf(uid);
+            if (_recent.size() >= 2) {
+                _recent.keySet().removeIf(k -> !k.equals(_newest));
+            }
+            _recent.put(uid, files);
+            _newest = uid;
+        }
+        return files;
+    }
+
+    /** Returns a Bloom filter holding the paths CHANGED, or null if
+     * there are too many of them. */
+    static long[] filter(Collection<String> changed) {
+        if (changed.size() > MAX_CHANGED) {
+            return null;
+        }
+        long[] filter = new long[(changed.size() * BITS_PER_PATH + 63) / 64];
+        for (String path : changed) {
+            int[] hash = hashes(path);
+            for (int i = 0; i < PROBES; i += 1) {
+                int bit = index(hash, i, filter.length);
+                filter[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return filter;
+    }
+
+    /** Returns false if PATH is certainly not in FILTER. */
+    static boolean contains(long[] filter, String path) {
+        if (filter.length == 0) {
+            return false;
+        }
+        int[] hash = hashes(path);
+        for (int i = 0; i < PROBES; i += 1) {
+            int bit = index(hash, i, filter.length);
+            if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the bit of a filter of LENGTH longs set by the Ith
+     * probe for a path hashing to HASH. */
+    private static int index(int[] hash, int i, int length) {
+        return (int) (Integer.toUnsignedLong(hash[0] + i * hash[1])
+                      % (64L * length));
+    }
+
+    /** Returns the two hashes of PATH from which the probes are made,
+     * as in git's changed-path filters. */
+    private static int[] hashes(String path) {
+        byte[] data = path.getBytes(StandardCharsets.UTF_8);
+        return new int[] {murmur3(SEED1, data), murmur3(SEED2, data)};
+    }
+
+    /** Returns the 32-bit MurmurHash3 of DATA with seed SEED. */
+    static int murmur3(int seed, byte[] data) {
+        final int c1 = 0xcc9e2d51, c2 = 0x1b873593;
+        int h = seed;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i += 1) {
+            int k = (data[4 * i] & 0xff) | (data[4 * i + 1] & 0xff) << 8
+                | (data[4 * i + 2] & 0xff) << 16 | (data[4 * i + 3] << 24);
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+        int k = 0;
+        switch (data.length & 3) {
+        case 3:
+            k ^= (data[4 * blocks + 2] & 0xff) << 16;
+            /* Fall through. */
+        case 2:
+            k ^= (data[4 * blocks + 1] & 0xff) << 8;
+            /* Fall through. */
+        case 1:
+            k ^= data[4 * blocks] & 0xff;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            break;
+        default:
+            break;
+        }
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Appends ENTRIES, keyed by commit, to the graph file, starting it
+     * if need be. */
+    private static void append(Map<String, Entry> entries) {
+        File f = file();
+        boolean fresh = !f.isFile();
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(f, true),
+                                          BUFFER))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+            }
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeByte(entry.parents.length);
+                for (String parent : entry.parents) {
+                    out.writeUTF(parent);
+                }
+                if (entry.filter == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entry.filter.length);
+                    for (long word : entry.filter) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the graph file. */
+    private static File file() {
+        return new File(Worktree.common(), "commit-graph");
+    }
+
+    /** The graph entry of one commit. */
+    private static class Entry {
+        /** An entry for a commit with PARENTS and changed-path filter
+         * FILTER (null if it changed too many paths). */
+        Entry(String[] parents, long[] filter) {
+            this.parents = parents;
+            this.filter = filter;
+        }
+
+        /** Parents of the commit. */
+        private final String[] parents;
+
+        /** Filter of the paths changed, or null. */
+        private final long[] filter;
+    }
+
+    /** First bytes of the graph file. */
+    private static final int MAGIC = 0x67436746;
+
+    /** Seeds of the two hashes of a path. */
+    private static final int SEED1 = 0x293ae76f, SEED2 = 0x7e646e2c;
+
+    /** Filter bits per changed path. */
+    private static final int BITS_PER_PATH = 10;
+
+    /** Bits probed per path: about the best for BITS_PER_PATH, giving
+     * a false positive rate under one percent. */
+    private static final int PROBES = 7;
+
+    /** Commits changing more paths than this get no filter. */
+    private static final int MAX_CHANGED = 512;
+
+    /** Size of the read and write buffers. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Entries by commit. */
+    private final HashMap<String, Entry> _entries =
+        new HashMap<String, Entry>();
+
+    /** Entries made since the graph was read, not yet written. */
+    private final HashMap<String, Entry> _added =
+        new HashMap<String, Entry>();
+
+    /** Files of the most recently read commits. */
+    private final HashMap<String, Map<String, String>> _recent =
+        new HashMap<String, Map<String, String>>();
+
+    /** The commit read last. */
+    private String _newest;
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line diffs by Myers' O(ND) algorithm, in its linear-space form:
+ * each step finds the middle snake of a shortest edit script and
+ * recurses on the two halves around it. Lines are numbered first, so
+ * that comparing two lines is comparing two ints.
+ * @author Max Miranda */
+class Diff {
+
+    /** Returns, for each line of B, the index of the line of A it is
+     * kept from in a shortest edit script turning A into B, or -1 if it
+     * is inserted. */
+    static int[] match(List<String> a, List<String> b) {
+        Map<String, Integer> numbers = new HashMap<String, Integer>();
+        Diff diff = new Diff(number(a, numbers), number(b, numbers));
+        diff.compare(0, a.size(), 0, b.size());
+        return diff._match;
+    }
+
+    /** Returns LINES as numbers, equal lines getting equal numbers as
+     * recorded in NUMBERS. */
+    private static int[] number(List<String> lines,
+                                Map<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer n = numbers.putIfAbsent(lines.get(i), numbers.size());
+            result[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return result;
+    }
+
+    /** A diff of A against B. */
+    private Diff(int[] a, int[] b) {
+        _a = a;
+        _b = b;
+        _match = new int[b.length];
+        Arrays.fill(_match, -1);
+    }
+
+    /** Matches up the lines of _a[ALO .. AHI) and _b[BLO .. BHI). */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && _a[aLo] == _b[bLo]) {
+            _match[bLo] = aLo;
+            aLo += 1;
+            bLo += 1;
+        }
+        while (aLo < aHi && bLo < bHi && _a[aHi - 1] == _b[bHi - 1]) {
+            _match[bHi - 1] = aHi - 1;
+            aHi -= 1;
+            bHi -= 1;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+        compare(aLo, snake[0], bLo, snake[1]);
+        for (int x = snake[0], y = snake[1]; x < snake[2]; x += 1, y += 1) {
+            _match[y] = x;
+        }
+        compare(snake[2], aHi, snake[3], bHi);
+    }
+
+    /** Returns {x, y, u, v}, where (x, y) to (u, v) is the middle snake
+     * of a shortest edit script from _a[ALO .. AHI) to _b[BLO .. BHI),
+     * both of which are non-empty and differ at each end. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo, m = bHi - bLo, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[off + k - 1]
+                                          < forward[off + k + 1])) {
+                    x = forward[off + k + 1];
+                } else {
+                    x = forward[off + k - 1] + 1;
+                }
+                int y = x - k, x0 = x, y0 = y;
+                while (x < n && y < m && _a[aLo + x] == _b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[off + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1
+                    && x + backward[off + c] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int c = -d; c <= d; c += 2) {
+                int x;
+                if (c == -d || (c != d && backward[off + c - 1]
+                                          < backward[off + c + 1])) {
+                    x = backward[off + c + 1];
+                } else {
+                    x = backward[off + c - 1] + 1;
+                }
+                int y = x - c, x0 = x, y0 = y;
+                while (x < n && y < m
+                       && _a[aHi - 1 - x] == _b[bHi - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                backward[off + c] = x;
+                int k = delta - c;
+                if (!odd && k >= -d && k <= d
+                    && x + forward[off + k] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Line numbers of the old text. */
+    private final int[] _a;
+
+    /** Line numbers of the new text. */
+    private final int[] _b;
+
+    /** For each new line, the old line it is kept from, or -1. */
+    private final int[] _match;
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The objects and references of a .gitlet directory: each commit a
+ * file of its own under commits/, each blob one under staging/, named
+ * by id, and the references as Refs keeps them. This is the store the
+ * command line uses. Objects are written by way of a temporary file,
+ * so that one is never seen half written, and blobs are made read-only
+ * once stored.
+ * @author Max Miranda */
+public class FileStore implements ObjectStore {
+
+    /** The store in the existing .gitlet directory DIR. */
+    public FileStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the store in the .gitlet directory DIR, making that and
+     * its object directories if need be. */
+    public static FileStore create(File dir) {
+        new File(dir, COMMITS).mkdirs();
+        new File(dir, BLOBS).mkdirs();
+        return new FileStore(dir);
+    }
+
+    @Override
+    public boolean has(Kind kind, String id) {
+        return file(kind, id).isFile();
+    }
+
+    @Override
+    public byte[] read(Kind kind, String id) {
+        File f = file(kind, id);
+        return f.isFile() ? Utils.readContents(f) : null;
+    }
+
+    @Override
+    public void write(Kind kind, String id, byte[] contents) {
+        File f = file(kind, id);
+        if (kind == Kind.BLOB && f.exists()) {
+            return;
+        }
+        File tmp = new File(f.getPath() + ".tmp");
+        Utils.writeContents(tmp, (Object) contents);
+        move(tmp, f);
+        if (kind == Kind.BLOB) {
+            f.setReadOnly();
+        }
+    }
+
+    @Override
+    public List<String> list(Kind kind) {
+        List<String> names =
+            Utils.plainFilenamesIn(new File(_dir, dirName(kind)));
+        List<String> result = new ArrayList<String>();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(".tmp")) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Copies a file on disk to its blob without reading it onto the
+     * heap, byte for byte. */
+    @Override
+    public String storeFile(WorkingTree work, String name) {
+        File f = work instanceof FileWorkingTree
+            ? ((FileWorkingTree) work).file(name) : null;
+        if (f == null) {
+            return ObjectStore.super.storeFile(work, name);
+        }
+        String id = Hashing.hashFile(f);
+        File blob = file(Kind.BLOB, id);
+        if (!blob.exists()) {
+            File tmp = new File(blob.getPath() + ".tmp");
+            try {
+                Files.copy(f.toPath(), tmp.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            move(tmp, blob);
+            blob.setReadOnly();
+        }
+        return id;
+    }
+
+    @Override
+    public References refs() {
+        if (_refs == null) {
+            _refs = new Refs(_dir);
+        }
+        return _refs;
+    }
+
+    /** Returns the .gitlet directory of this store. */
+    public File dir() {
+        return _dir;
+    }
+
+    /** Returns the file holding the object ID of kind KIND. */
+    File file(Kind kind, String id) {
+        return new File(new File(_dir, dirName(kind)), id);
+    }
+
+    /** Returns the name of the directory holding objects of KIND. */
+    private static String dirName(Kind kind) {
+        return kind == Kind.COMMIT ? COMMITS : BLOBS;
+    }
+
+    /** Renames TMP to DEST, replacing any file there. */
+    private static void move(File tmp, File dest) {
+        try {
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Names of the commit and blob directories within .gitlet. */
+    private static final String COMMITS = "commits", BLOBS = "staging";
+
+    /** The .gitlet directory. */
+    private final File _dir;
+
+    /** Its references, made when first needed. */
+    private Refs _refs;
+}
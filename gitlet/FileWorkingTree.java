@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** A working tree that is a directory on disk.
+ * @author Max Miranda */
+public class FileWorkingTree implements WorkingTree {
+
+    /** The working tree in the directory DIR. */
+    public FileWorkingTree(File dir) {
+        _dir = dir;
+    }
+
+    @Override
+    public List<String> files() {
+        List<String> names = Utils.plainFilenamesIn(_dir);
+        if (names == null) {
+            return Collections.<String>emptyList();
+        }
+        List<String> result = new ArrayList<String>(names);
+        result.removeIf(name -> name.startsWith(Watcher.COOKIE));
+        return result;
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return new File(_dir, name).isFile();
+    }
+
+    @Override
+    public long length(String name) {
+        return new File(_dir, name).length();
+    }
+
+    @Override
+    public long lastModified(String name) {
+        return new File(_dir, name).lastModified();
+    }
+
+    @Override
+    public byte[] read(String name) {
+        return Utils.readContents(new File(_dir, name));
+    }
+
+    /** Hashes the file without reading it onto the heap. */
+    @Override
+    public String hash(String name) {
+        return Hashing.hashFile(new File(_dir, name));
+    }
+
+    /** Removes any file NAME before writing, so that one hard linked
+     * to a blob is broken rather than written through. */
+    @Override
+    public void write(String name, byte[] contents) {
+        File f = new File(_dir, name);
+        f.delete();
+        Utils.writeContents(f, (Object) contents);
+    }
+
+    @Override
+    public void delete(String name) {
+        Utils.restrictedDelete(new File(_dir, name));
+    }
+
+    /** Returns the directory of this tree. */
+    public File dir() {
+        return _dir;
+    }
+
+    /** Returns the file NAME of this tree. */
+    File file(String name) {
+        return new File(_dir, name);
+    }
+
+    /** The directory. */
+    private final File _dir;
+}
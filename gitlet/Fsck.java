@@ -0,0 +1,305 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/** Integrity check of the object store. Every commit and blob is
+ * rehashed and compared with the name it is stored under; then every
+ * reference, from branches, tags, and the staging areas, stashes and
+ * bisections of every working directory sharing the store, down
+ * through parents and tracked files, is checked to resolve, and
+ * objects nothing refers to are reported as dangling. Objects are
+ * rehashed on a pool with more threads than cores, so that enough
+ * reads are in flight to keep the disk, rather than one core, busy.
+ * @author Max Miranda */
+class Fsck {
+
+    /** A check of the objects of REPO. */
+    Fsck(Repo repo) {
+        _repo = repo;
+    }
+
+    /** Checks every object, printing one line per problem found,
+     * sorted, and then a summary. Returns true iff no object is
+     * corrupt or missing. */
+    boolean check() {
+        List<File> commits = objects(Worktree.commits());
+        List<File> blobs = objects(Worktree.blobs());
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            pool.submit(() -> {
+                commits.parallelStream().forEach(this::checkCommit);
+                blobs.parallelStream().forEach(this::checkBlob);
+            }).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        connect();
+        for (String problem : _problems) {
+            Utils.out().println(problem);
+        }
+        Utils.message("Checked %d commits and %d blobs: %d corrupt, "
+                      + "%d missing, %d dangling%s.", commits.size(),
+                      blobs.size(), _corrupt, _missing, _dangling,
+                      _legacy == 0 ? ""
+                      : String.format("; %d need migrate", _legacy));
+        return _corrupt == 0 && _missing == 0;
+    }
+
+    /** Returns the files in the object directory DIR, leaving out
+     * those still being written. */
+    private static List<File> objects(File dir) {
+        List<File> result = new ArrayList<File>();
+        for (String name : Utils.plainFilenamesIn(dir)) {
+            if (!name.endsWith(".tmp")) {
+                result.add(new File(dir, name));
+            }
+        }
+        return result;
+    }
+
+    /** Checks that the commit stored in F can be read and hashes to its
+     * name, recording its parents and blobs for the connectivity check
+     * if so. A commit stored under the id an earlier version of gitlet
+     * gave it is not corrupt, but needs migrate; its history is still
+     * followed. */
+    private void checkCommit(File f) {
+        String id = f.getName();
+        Commit comm;
+        try {
+            comm = Utils.readObject(f, Commit.class);
+        } catch (RuntimeException excp) {
+            report("corrupt commit %s (unreadable)", id);
+            return;
+        }
+        if (!comm.hashCommit().equals(id)) {
+            if (!comm.legacyHash().equals(id)) {
+                report("corrupt commit %s (hash mismatch)", id);
+                return;
+            }
+            synchronized (this) {
+                _legacy += 1;
+            }
+            report("commit %s needs migrate", id);
+        }
+        _commits.put(id, new Links(comm));
+    }
+
+    /** Checks that the blob stored in F hashes to its name, recording
+     * it for the connectivity check if so. A blob that does not, and
+     * has other links to it, was most likely written through a working
+     * file checked out in link mode, and is reported as such. */
+    private void checkBlob(File f) {
+        String id = f.getName();
+        try {
+            if (Hashing.hashFile(f).equals(id)) {
+                _blobs.add(id);
+                return;
+            }
+        } catch (RuntimeException excp) {
+            report("corrupt blob %s (unreadable)", id);
+            return;
+        }
+        if (links(f) > 1) {
+            report("corrupt blob %s (hash mismatch, linked to a working "
+                   + "file)", id);
+        } else {
+            report("corrupt blob %s (hash mismatch)", id);
+        }
+    }
+
+    /** Returns the number of hard links to F, or 1 if the filesystem
+     * does not tell. */
+    private static int links(File f) {
+        try {
+            return (Integer) Files.getAttribute(f.toPath(), "unix:nlink");
+        } catch (IOException | UnsupportedOperationException
+                 | IllegalArgumentException excp) {
+            return 1;
+        }
+    }
+
+    /** Follows every reference from the roots, reporting those that do
+     * not resolve, and then reports the sound objects not reached. */
+    private void connect() {
+        Set<String> seenCommits = new HashSet<String>();
+        Set<String> seenBlobs = new HashSet<String>();
+        Deque<String> work = new ArrayDeque<String>();
+        for (Map.Entry<String, String> e
+                 : _repo.getBranches().entrySet()) {
+            reachCommit(e.getValue(), "branch " + e.getKey(),
+                        seenCommits, work);
+        }
+        for (Map.Entry<String, String> e : _repo.getTags().entrySet()) {
+            reachCommit(e.getValue(), "tag " + e.getKey(), seenCommits,
+                        work);
+        }
+        for (Repo worktree : _repo.worktrees()) {
+            for (Map.Entry<String, String> e
+                     : worktree.getStagingArea().entrySet()) {
+                if (!reachBlob(e.getValue(), seenBlobs)) {
+                    missingBlob(e.getValue(), "staged " + e.getKey());
+                }
+            }
+            for (String uid : worktree.getBisectRoots()) {
+                reachCommit(uid, "bisect", seenCommits, work);
+            }
+            for (String id : worktree.getStashes()) {
+                Stash entry = Stash.read(id);
+                reachCommit(entry.getBase(), "stash " + id, seenCommits,
+                            work);
+                for (String blob : entry.blobs()) {
+                    if (!reachBlob(blob, seenBlobs)) {
+                        missingBlob(blob, "stash " + id);
+                    }
+                }
+            }
+        }
+        while (!work.isEmpty()) {
+            String uid = work.pop();
+            Links links = _commits.get(uid);
+            for (String blob : links._blobs) {
+                if (!reachBlob(blob, seenBlobs)) {
+                    missingBlob(blob, fileIn(uid, blob) + " in commit " + uid);
+                }
+            }
+            if (!_repo.isShallow(uid)) {
+                for (String parent : links._parents) {
+                    reachCommit(parent, "parent of " + uid, seenCommits,
+                                work);
+                }
+            }
+        }
+        for (String uid : _commits.keySet()) {
+            if (!seenCommits.contains(uid)) {
+                _dangling += 1;
+                report("dangling commit %s", uid);
+            }
+        }
+        for (String id : _blobs) {
+            if (!seenBlobs.contains(id)) {
+                _dangling += 1;
+                report("dangling blob %s", id);
+            }
+        }
+    }
+
+    /** Notes a reference from WHERE to the commit UID, queueing it on
+     * WORK the first time it is added to SEEN. */
+    private void reachCommit(String uid, String where, Set<String> seen,
+                             Deque<String> work) {
+        if (!seen.add(uid)) {
+            return;
+        }
+        if (_commits.containsKey(uid)) {
+            work.push(uid);
+        } else if (!Worktree.commit(uid).exists()) {
+            _missing += 1;
+            report("missing commit %s (%s)", uid, where);
+        }
+    }
+
+    /** Notes a reference to the blob ID, checking it the first time it
+     * is added to SEEN. Returns false iff that finds it missing. Blobs
+     * left behind by a partial clone are not missing. */
+    private boolean reachBlob(String id, Set<String> seen) {
+        return !seen.add(id) || _blobs.contains(id)
+            || Worktree.blob(id).exists() || _repo.isPromised(id);
+    }
+
+    /** Reports that the blob ID, referred to from WHERE, is missing. */
+    private void missingBlob(String id, String where) {
+        _missing += 1;
+        report("missing blob %s (%s)", id, where);
+    }
+
+    /** Returns the name of a file the commit UID tracks as the blob ID.
+     * Only parents and blob ids are kept for the connectivity check, so
+     * the commit is read again. */
+    private String fileIn(String uid, String id) {
+        for (Map.Entry<String, String> e
+                 : _repo.uidToCommit(uid).getFiles().entrySet()) {
+            if (e.getValue().equals(id)) {
+                return e.getKey();
+            }
+        }
+        return id;
+    }
+
+    /** Records the problem described by the format FORMAT and ARGS.
+     * Corruption is counted here; other problems by the caller. */
+    private void report(String format, Object... args) {
+        String problem = String.format(format, args);
+        if (problem.startsWith("corrupt")) {
+            synchronized (this) {
+                _corrupt += 1;
+            }
+        }
+        _problems.add(problem);
+    }
+
+    /** What the connectivity check needs of a commit. */
+    private static class Links {
+
+        /** The parents and blobs of COMM. */
+        Links(Commit comm) {
+            HashMap<String, String> files = comm.getFiles();
+            _parents = comm.getParents() == null ? new String[0]
+                : comm.getParents();
+            _blobs = files == null ? new String[0]
+                : files.values().toArray(new String[0]);
+        }
+
+        /** Ids of the parents. */
+        private final String[] _parents;
+
+        /** Ids of the blobs tracked. */
+        private final String[] _blobs;
+    }
+
+    /** Number of objects rehashed at once. */
+    private static final int PARALLELISM =
+        Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    /** The repository being checked. */
+    private final Repo _repo;
+
+    /** The parents and blobs of each sound commit, by id. */
+    private final Map<String, Links> _commits =
+        new ConcurrentHashMap<String, Links>();
+
+    /** Ids of sound blobs. */
+    private final Set<String> _blobs = ConcurrentHashMap.newKeySet();
+
+    /** Problems found, in order. */
+    private final Set<String> _problems =
+        Collections.synchronizedSet(new TreeSet<String>());
+
+    /** Number of corrupt objects. */
+    private int _corrupt;
+
+    /** Number of commits stored under ids from an earlier version. */
+    private int _legacy;
+
+    /** Number of missing objects. */
+    private int _missing;
+
+    /** Number of dangling objects. */
+    private int _dangling;
+}
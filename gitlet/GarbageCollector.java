@@ -0,0 +1,230 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/** Mark-and-sweep collector for the object store. Everything
+ * reachable from a branch, a tag, or the staging area, a stash or a
+ * bisection of any working directory sharing the store is live;
+ * every other commit and blob is garbage once it is older than
+ * the grace period, as is every large object no live pointer blob
+ * points to.
+ *
+ * A limited run visits at most its limit of commits while marking.
+ * If that does not finish the mark, it saves the marks and the commits
+ * left to visit in .gitlet/gc-progress and stops. The next run
+ * continues from there, first adding the roots as they are then.
+ * Marks only ever grow, so once nothing is left to visit every object
+ * still reachable is marked. Objects written after the mark began are
+ * spared as well.
+ * @author Max Miranda */
+class GarbageCollector {
+
+    /** A collector for REPO that spares objects written within the
+     * last GRACE milliseconds and visits and removes at most LIMIT
+     * objects per run (a negative LIMIT means no limit). */
+    GarbageCollector(Repo repo, long grace, long limit) {
+        _repo = repo;
+        _grace = grace;
+        _limit = limit;
+    }
+
+    /** Marks, then sweeps oldest garbage first, printing a one line
+     * summary. A limited run leaves the rest for the next one. */
+    void collect() {
+        Progress progress = Progress.load();
+        _liveCommits = ConcurrentHashMap.newKeySet();
+        _liveCommits.addAll(progress._commits);
+        _liveBlobs = ConcurrentHashMap.newKeySet();
+        _liveBlobs.addAll(progress._blobs);
+        List<String> frontier = mark(progress._frontier);
+        if (!frontier.isEmpty()) {
+            progress._commits = new HashSet<String>(_liveCommits);
+            progress._blobs = new HashSet<String>(_liveBlobs);
+            progress._frontier = new ArrayList<String>(frontier);
+            progress.save();
+            Utils.message("Marked %d commits; %d left to visit by a later "
+                    + "run.", _liveCommits.size(), frontier.size());
+            return;
+        }
+        progressFile().delete();
+        long cutoff = Math.min(System.currentTimeMillis() - _grace,
+                               progress._started);
+        int removed = 0;
+        int kept = 0;
+        List<File> garbage = new ArrayList<File>();
+        garbage.addAll(unmarked(Worktree.commits(), _liveCommits));
+        garbage.addAll(unmarked(Worktree.blobs(), _liveBlobs));
+        garbage.addAll(unmarked(Lfs.dir(), liveLarge()));
+        garbage.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : garbage) {
+            if (file.lastModified() > cutoff) {
+                kept += 1;
+            } else if (_limit >= 0 && removed >= _limit) {
+                kept += 1;
+            } else if (file.delete()) {
+                removed += 1;
+            }
+        }
+        Utils.message("Removed %d unreachable objects; %d left for a later "
+                + "run.", removed, kept);
+    }
+
+    /** Walks the commit graph one generation at a time starting
+     * from FRONTIER, the commits a previous run left to visit, and from
+     * the branch heads, the tagged commits and the commits stashed
+     * work was based on. Each generation is read in parallel, since
+     * loading a commit is dominated by disk reads. Returns the commits
+     * left to visit once the limit is reached, if any. */
+    private List<String> mark(List<String> frontier) {
+        frontier = new ArrayList<String>(frontier);
+        List<String> heads = new ArrayList<String>();
+        heads.addAll(_repo.getBranches().values());
+        heads.addAll(_repo.getTags().values());
+        for (String head : heads) {
+            if (_liveCommits.add(head)) {
+                frontier.add(head);
+            }
+        }
+        for (Repo worktree : _repo.worktrees()) {
+            _liveBlobs.addAll(worktree.getStagingArea().values());
+            for (String uid : worktree.getBisectRoots()) {
+                if (_liveCommits.add(uid)) {
+                    frontier.add(uid);
+                }
+            }
+            for (String id : worktree.getStashes()) {
+                Stash entry = Stash.read(id);
+                _liveBlobs.addAll(entry.blobs());
+                if (_liveCommits.add(entry.getBase())) {
+                    frontier.add(entry.getBase());
+                }
+            }
+        }
+        long visited = 0;
+        while (!frontier.isEmpty() && (_limit < 0 || visited < _limit)) {
+            int n = _limit < 0 ? frontier.size()
+                : (int) Math.min(frontier.size(), _limit - visited);
+            List<String> rest = new ArrayList<String>(
+                frontier.subList(n, frontier.size()));
+            rest.addAll(frontier.subList(0, n).parallelStream()
+                .map(this::visit)
+                .flatMap(Collection::stream)
+                .filter(_liveCommits::add)
+                .collect(Collectors.toList()));
+            visited += n;
+            frontier = rest;
+        }
+        return frontier;
+    }
+
+    /** Marks the blobs of the commit with id UID and returns the
+     * ids of its parents. */
+    private List<String> visit(String uid) {
+        Commit comm = _repo.uidToCommit(uid);
+        HashMap<String, String> files = comm.getFiles();
+        if (files != null) {
+            _liveBlobs.addAll(files.values());
+        }
+        List<String> parents = new ArrayList<String>();
+        if (comm.getParents() != null && !_repo.isShallow(uid)) {
+            for (String parent : comm.getParents()) {
+                parents.add(parent);
+            }
+        }
+        return parents;
+    }
+
+    /** Returns the ids of the large objects the live blobs point to.
+     * Only blobs of a pointer's length are read, and none at all if
+     * there is no large-object store. */
+    private Set<String> liveLarge() {
+        if (!Lfs.dir().isDirectory()) {
+            return new HashSet<String>();
+        }
+        return _liveBlobs.parallelStream()
+            .map(Lfs::oidOf)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+    }
+
+    /** Returns the files in DIR whose names are not in LIVE. */
+    private static List<File> unmarked(File dir, Set<String> live) {
+        List<File> result = new ArrayList<File>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            if (!live.contains(file.getName())) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /** The marks saved by a run that did not finish marking. */
+    private static class Progress implements Serializable {
+
+        /** Returns the saved marks, or fresh ones if there are none. */
+        static Progress load() {
+            File file = progressFile();
+            if (file.isFile()) {
+                return Utils.readObject(file, Progress.class);
+            }
+            Progress result = new Progress();
+            result._started = System.currentTimeMillis();
+            return result;
+        }
+
+        /** Saves these marks. */
+        void save() {
+            Utils.writeObject(progressFile(), this);
+        }
+
+        /** Pinned so that saved marks survive changes to this class. */
+        private static final long serialVersionUID = 1L;
+
+        /** Time at which the mark began. */
+        private long _started;
+
+        /** Ids of the commits marked so far. */
+        private HashSet<String> _commits = new HashSet<String>();
+
+        /** Ids of the blobs marked so far. */
+        private HashSet<String> _blobs = new HashSet<String>();
+
+        /** Marked commits whose parents and blobs are not yet marked. */
+        private ArrayList<String> _frontier = new ArrayList<String>();
+    }
+
+    /** Returns the file holding the progress of an unfinished mark. */
+    private static File progressFile() {
+        return new File(Worktree.common(), "gc-progress");
+    }
+
+    /** The repository being collected. */
+    private final Repo _repo;
+
+    /** Objects younger than this many milliseconds are never removed. */
+    private final long _grace;
+
+    /** Maximum number of objects removed per run, or -1. */
+    private final long _limit;
+
+    /** Ids of reachable commits. */
+    private Set<String> _liveCommits;
+
+    /** Ids of reachable blobs. */
+    private Set<String> _liveBlobs;
+}
@@ -0,0 +1,408 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/** A repository opened for use from Java rather than from the command
+ * line. Any command of the command line can be run, and the common
+ * ones have methods of their own; the repository is saved after each.
+ * A command that fails throws a GitletException carrying the message
+ * the command line would print, and leaves the repository as it was.
+ * Commands run one at a time, in whatever threads call them. For
+ * reading, snapshot() returns an immutable view of the branches and
+ * the commits they lead to, which any number of threads may use while
+ * commands go on. What commands print goes to the stream given to
+ * setOutput, and is otherwise discarded. As on the command line, the
+ * repository is normally the one in the current directory, and one
+ * Gitlet should be opened for it per process. One made by create(),
+ * open(store, ...) or inMemory() instead lives in the ObjectStore and
+ * WorkingTree it is given, is never saved to disk, and has no tie to
+ * the current directory, so any number may be open at once; it runs
+ * the everyday commands, and refuses those, such as push or stash,
+ * that need a .gitlet directory. Each names its objects with its own
+ * hash algorithm, whatever the others use.
+ * @author Max Miranda */
+public final class Gitlet {
+
+    /** Opens the repository in the current directory. */
+    public static Gitlet open() {
+        if (!isRepository()) {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+        return new Gitlet(load());
+    }
+
+    /** Creates a repository in the current directory whose objects are
+     * named by hashing with ALGORITHM (Hashing.SHA1 or
+     * Hashing.SHA256), and opens it. */
+    public static Gitlet init(String algorithm) {
+        if (isRepository()) {
+            throw Utils.error(ALREADY);
+        }
+        Gitlet gitlet = new Gitlet(new Repo(algorithm));
+        gitlet.save();
+        return gitlet;
+    }
+
+    /** Creates a repository in the current directory as a clone of the
+     * one whose .gitlet directory is at PATH, as the clone command
+     * does, and opens it. History is cut off after DEPTH generations
+     * unless DEPTH is negative, and unless BLOBS file contents are
+     * brought down only as they are needed. */
+    public static Gitlet cloneFrom(String path, int depth, boolean blobs) {
+        if (isRepository()) {
+            throw Utils.error(ALREADY);
+        }
+        File remote = Remote.locate(path);
+        Repo repo = new Repo(Remote.open(remote).getHashAlgorithm());
+        repo.cloneFrom(path, depth, blobs);
+        Gitlet gitlet = new Gitlet(repo);
+        gitlet.save();
+        return gitlet;
+    }
+
+    /** Creates a repository whose objects are named by hashing with
+     * ALGORITHM, keeping its objects and references in STORE, which
+     * must be empty, and its working files in WORK, and opens it. */
+    public static Gitlet create(ObjectStore store, WorkingTree work,
+                                String algorithm) {
+        if (!store.refs().list(Refs.HEADS).isEmpty()) {
+            throw Utils.error("That store already holds a repository.");
+        }
+        return new Gitlet(new Repo(algorithm, store, work));
+    }
+
+    /** Opens the repository whose objects, named by hashing with
+     * ALGORITHM, and references are in STORE, with working files in
+     * WORK, as though BRANCH were checked out there and nothing staged.
+     * WORK is taken as it is; reset fills it from a commit. */
+    public static Gitlet open(ObjectStore store, WorkingTree work,
+                              String algorithm, String branch) {
+        return new Gitlet(new Repo(algorithm, store, work, branch));
+    }
+
+    /** Creates an empty repository held wholly in memory, naming its
+     * objects by SHA-1, and opens it. Its working files are those of
+     * work(). */
+    public static Gitlet inMemory() {
+        return create(new MemoryStore(), new MemoryWorkingTree(),
+                      Hashing.SHA1);
+    }
+
+    /** Returns the working files of this repository. */
+    public synchronized WorkingTree work() {
+        return _repo.work();
+    }
+
+    /** Returns true iff ARG names a command. */
+    static boolean validCommand(String arg) {
+        return Arrays.asList(COMMANDS).contains(arg);
+    }
+
+    /** Sends what commands print to OUT. */
+    public synchronized void setOutput(PrintStream out) {
+        _out = out;
+    }
+
+    /** Runs the command line ARGS, a command name followed by its
+     * operands, and saves the repository. */
+    public void run(String... args) {
+        run(args, true);
+    }
+
+    /** Stages the working file NAME. */
+    public void add(String name) {
+        run("add", name);
+    }
+
+    /** Stages the file NAME for removal. */
+    public void rm(String name) {
+        run("rm", name);
+    }
+
+    /** Commits what is staged with message MESSAGE, returning the id of
+     * the new commit. */
+    public synchronized String commit(String message) {
+        run("commit", message);
+        return _repo.getHead();
+    }
+
+    /** Creates the branch NAME at the current commit. */
+    public void branch(String name) {
+        run("branch", name);
+    }
+
+    /** Checks out the branch NAME. */
+    public void checkout(String name) {
+        run("checkout", name);
+    }
+
+    /** Merges the branch NAME into the current branch. */
+    public void merge(String name) {
+        run("merge", name);
+    }
+
+    /** Returns the status of the working directory. */
+    public synchronized Status status() {
+        Status status = Hashing.using(_repo.getHashAlgorithm(),
+                                      _repo::getStatus);
+        save();
+        return status;
+    }
+
+    /** Returns a snapshot of the repository as it now stands. */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(_repo);
+    }
+
+    /** Runs the command line ARGS, saving the repository afterwards if
+     * SAVE. A command that fails, whether with a GitletException or
+     * some other error, leaves the repository as it was before, with
+     * the branches and tags it moved, made or removed put back. */
+    synchronized void run(String[] args, boolean save) {
+        if (args.length == 0) {
+            throw Utils.error("Please enter a command.");
+        }
+        if (!validCommand(args[0])) {
+            throw Utils.error("No command with that name exists.");
+        }
+        boolean onDisk = _repo.inPlace();
+        byte[] before = save && onDisk ? null : Utils.serialize(_repo);
+        PrintStream out = Utils.out();
+        Utils.setOutput(_out);
+        _repo.recordRefs(true);
+        try {
+            Hashing.using(_repo.getHashAlgorithm(), () -> {
+                dispatch(args[0], Arrays.copyOfRange(args, 1, args.length));
+                return null;
+            });
+            if (save) {
+                save();
+            }
+            _repo.recordRefs(false);
+        } catch (RuntimeException excp) {
+            _repo.restoreRefs();
+            Repo was = before == null ? load()
+                : Utils.deserialize(before, Repo.class);
+            if (!onDisk) {
+                was.attach(_repo.store(), _repo.work());
+            }
+            _repo = was;
+            throw excp;
+        } finally {
+            Utils.setOutput(out);
+        }
+    }
+
+    /** Writes the repository to its file, if it has one. */
+    synchronized void save() {
+        if (_repo.inPlace()) {
+            _repo.saveShared();
+            Utils.writeObject(new File(REPO_FILE), _repo);
+        }
+    }
+
+    /** A Gitlet for REPO. */
+    private Gitlet(Repo repo) {
+        _repo = repo;
+        if (repo.inPlace()) {
+            Hashing.use(repo.getHashAlgorithm());
+        }
+    }
+
+    /** Runs the command named COMMAND with OPERANDS. */
+    private void dispatch(String command, String[] operands) {
+        if (!_repo.inPlace() && !Arrays.asList(DETACHED).contains(command)) {
+            throw Utils.error(Repo.ON_DISK);
+        }
+        switch (command) {
+        case "init":
+            throw Utils.error(ALREADY);
+        case "add":
+            checkOperands(operands, 1);
+            _repo.add(operands[0]);
+            break;
+        case "commit":
+            checkOperands(operands, 1);
+            _repo.commit(operands[0]);
+            break;
+        case "rm":
+            checkOperands(operands, 1);
+            _repo.rm(operands[0]);
+            break;
+        case "log":
+            if (operands.length == 2 && operands[0].equals("--")) {
+                _repo.logPath(operands[1]);
+            } else {
+                checkOperands(operands, 0);
+                _repo.logCommits();
+            }
+            break;
+        case "global-log":
+            _repo.globalLog();
+            break;
+        case "find":
+            checkOperands(operands, 1);
+            _repo.find(operands[0]);
+            break;
+        case "status":
+            _repo.status();
+            break;
+        case "checkout":
+            if (operands.length == 1) {
+                _repo.checkout(operands[0]);
+            } else {
+                _repo.checkout(operands);
+            }
+            break;
+        case "branch":
+            checkOperands(operands, 1);
+            _repo.branch(operands[0]);
+            break;
+        case "tag":
+            _repo.tag(operands);
+            break;
+        case "rm-branch":
+            checkOperands(operands, 1);
+            _repo.rmBranch(operands[0]);
+            break;
+        case "reset":
+            checkOperands(operands, 1);
+            _repo.reset(operands[0]);
+            break;
+        case "merge":
+            checkOperands(operands, 1);
+            _repo.merge(operands[0]);
+            break;
+        case "gc":
+            _repo.gc(operands);
+            break;
+        case "fsck":
+            checkOperands(operands, 0);
+            _repo.fsck();
+            break;
+        case "add-remote":
+            checkOperands(operands, 2);
+            _repo.addRemote(operands[0], operands[1]);
+            break;
+        case "rm-remote":
+            checkOperands(operands, 1);
+            _repo.rmRemote(operands[0]);
+            break;
+        case "fetch":
+            checkOperands(operands, 2);
+            _repo.fetch(operands[0], operands[1]);
+            break;
+        case "push":
+            checkOperands(operands, 2);
+            _repo.push(operands[0], operands[1]);
+            break;
+        case "pull":
+            checkOperands(operands, 2);
+            _repo.pull(operands[0], operands[1]);
+            break;
+        case "bisect":
+            _repo.bisect(operands);
+            break;
+        case "cherry-pick":
+            checkOperands(operands, 1);
+            _repo.cherryPick(operands[0]);
+            break;
+        case "rebase":
+            checkOperands(operands, 1);
+            _repo.rebase(operands[0]);
+            break;
+        case "stash":
+            _repo.stash(operands);
+            break;
+        case "blame":
+            checkOperands(operands, 1);
+            _repo.blame(operands[0]);
+            break;
+        case "archive":
+            _repo.archive(operands);
+            break;
+        case "sparse-checkout":
+            _repo.sparseCheckout(operands);
+            break;
+        case "worktree":
+            _repo.worktree(operands);
+            break;
+        case "migrate":
+            checkOperands(operands, 0);
+            _repo.migrate();
+            break;
+        case "config":
+            _repo.config(operands);
+            break;
+        case "watch":
+            if (operands.length == 1 && operands[0].equals("--stop")) {
+                Watcher.stop();
+            } else {
+                checkOperands(operands, 0);
+                Watcher.run();
+            }
+            break;
+        case "clone":
+            throw Utils.error(ALREADY);
+        case "batch":
+            throw Utils.error("A batch cannot run another batch.");
+        default:
+            throw Utils.error("No command with that name exists.");
+        }
+    }
+
+    /** Checks that OPERANDS holds exactly N operands. */
+    private static void checkOperands(String[] operands, int n) {
+        if (operands.length != n) {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Returns true iff the current directory holds a repository. */
+    private static boolean isRepository() {
+        return new File(System.getProperty("user.dir"), ".gitlet")
+            .exists();
+    }
+
+    /** Returns the repository in the current directory. */
+    private static Repo load() {
+        Repo repo = Utils.readObject(new File(REPO_FILE), Repo.class);
+        repo.loadShared();
+        return repo;
+    }
+
+    /** Names of the commands. */
+    private static final String[] COMMANDS = {"init", "add",
+        "commit", "rm", "log", "global-log",
+        "find", "status", "checkout",
+        "branch", "rm-branch", "reset", "merge", "gc",
+        "add-remote", "rm-remote", "fetch", "push", "pull", "clone",
+        "watch", "config", "migrate", "batch", "bisect",
+        "blame", "stash", "cherry-pick", "rebase",
+        "fsck", "tag", "archive", "sparse-checkout",
+        "worktree"};
+
+    /** Names of the commands a repository that is not in a .gitlet
+     * directory can run. */
+    private static final String[] DETACHED = {"init", "add", "commit",
+        "rm", "log", "global-log", "find", "status", "checkout", "branch",
+        "rm-branch", "reset", "merge", "tag", "config", "clone", "batch",
+        "stash", "sparse-checkout"};
+
+    /** Message for making a repository where there is one. */
+    private static final String ALREADY = "A Gitlet version-control "
+        + "system already exists in the current directory.";
+
+    /** Path to the file holding the repository. */
+    private static final String REPO_FILE = ".gitlet/myrepo";
+
+    /** The repository. */
+    private Repo _repo;
+
+    /** Where commands print. */
+    private PrintStream _out =
+        new PrintStream(OutputStream.nullOutputStream());
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+/** Object hashing. Digests are expensive to look up, so each thread
+ * keeps one per algorithm and resets it between uses. A repository
+ * hashes its objects with SHA-1 unless it was created with SHA-256.
+ * The algorithm in use is that of the repository of the current
+ * directory, chosen once per process with use(), except while a
+ * thread runs a command for another repository under using().
+ * @author Max Miranda */
+class Hashing {
+
+    /** Name of the default algorithm. */
+    static final String SHA1 = "SHA-1";
+
+    /** Name of the alternative algorithm for new repositories. */
+    static final String SHA256 = "SHA-256";
+
+    /** Makes ALGORITHM, one of SHA1 and SHA256 (null meaning SHA1),
+     * the algorithm used for object ids from now on. */
+    static void use(String algorithm) {
+        _algorithm = algorithm == null ? SHA1 : algorithm;
+    }
+
+    /** Returns the result of BODY, run with ALGORITHM (null meaning
+     * SHA1) as the algorithm in use in this thread, whatever any other
+     * thread uses. */
+    static <T> T using(String algorithm, Supplier<T> body) {
+        String outer = SCOPED.get();
+        SCOPED.set(algorithm == null ? SHA1 : algorithm);
+        try {
+            return body.get();
+        } finally {
+            if (outer == null) {
+                SCOPED.remove();
+            } else {
+                SCOPED.set(outer);
+            }
+        }
+    }
+
+    /** Returns the name of the algorithm in use in this thread. */
+    static String algorithm() {
+        String scoped = SCOPED.get();
+        return scoped == null ? _algorithm : scoped;
+    }
+
+    /** Returns the length of an object id as a hexadecimal numeral. */
+    static int idLength() {
+        return algorithm().equals(SHA256) ? 2 * 32 : 2 * 20;
+    }
+
+    /** Returns this thread's digest for the algorithm in use, reset
+     * and ready for input. */
+    static MessageDigest digest() {
+        return digest(algorithm());
+    }
+
+    /** Returns this thread's digest for ALGORITHM, reset and ready for
+     * input. */
+    static MessageDigest digest(String algorithm) {
+        MessageDigest md = algorithm.equals(SHA256) ? SHA256_DIGEST.get()
+                                                    : SHA1_DIGEST.get();
+        md.reset();
+        return md;
+    }
+
+    /** Returns the id, under the algorithm in use, of the object
+     * holding the concatenation of VALS, which may be any mixture of
+     * byte arrays, ByteBuffers and Strings. */
+    static String hash(Object... vals) {
+        return hash(algorithm(), vals);
+    }
+
+    /** Returns the ALGORITHM hash of the concatenation of VALS, which
+     * may be any mixture of byte arrays, ByteBuffers and Strings. */
+    static String hash(String algorithm, Object... vals) {
+        MessageDigest md = digest(algorithm);
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof ByteBuffer) {
+                md.update((ByteBuffer) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to hash");
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns the id, under the algorithm in use, of the contents of
+     * FILE. The file is read through a direct buffer, or mapped if it
+     * is large, so its contents are never copied onto the heap. */
+    static String hashFile(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            return hash(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the id, under the algorithm in use, of the remaining
+     * contents of IN. */
+    static String hash(FileChannel in) throws IOException {
+        MessageDigest md = digest();
+        long size = in.size();
+        if (size - in.position() >= MAP_THRESHOLD) {
+            for (long pos = in.position(); pos < size; pos += MAP_CHUNK) {
+                long len = Math.min(MAP_CHUNK, size - pos);
+                md.update(in.map(FileChannel.MapMode.READ_ONLY, pos, len));
+            }
+        } else {
+            ByteBuffer buf = BUFFER.get();
+            buf.clear();
+            while (in.read(buf) > 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns HASH as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] hash) {
+        char[] result = new char[2 * hash.length];
+        for (int i = 0; i < hash.length; i += 1) {
+            int b = hash[i] & 0xff;
+            result[2 * i] = HEX[b >>> 4];
+            result[2 * i + 1] = HEX[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns a new digest for ALGORITHM. */
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + algorithm);
+        }
+    }
+
+    /** The algorithm in use where no thread has chosen another. */
+    private static volatile String _algorithm = SHA1;
+
+    /** The algorithm each thread running under using() has chosen. */
+    private static final ThreadLocal<String> SCOPED =
+        new ThreadLocal<String>();
+
+    /** Each thread's SHA-1 digest. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+        ThreadLocal.withInitial(() -> newDigest(SHA1));
+
+    /** Each thread's SHA-256 digest. */
+    private static final ThreadLocal<MessageDigest> SHA256_DIGEST =
+        ThreadLocal.withInitial(() -> newDigest(SHA256));
+
+    /** Each thread's buffer for reading small files. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1 << 16));
+
+    /** Files at least this long are hashed through a mapping. */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    /** Largest mapping made at once while hashing. */
+    private static final long MAP_CHUNK = 1 << 28;
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** The large-object store. A working file at least as large as the
+ * lfs.threshold setting is not stored as a blob of its own; instead
+ * its contents go to .gitlet/lfs/, named by their id, and the blob
+ * recorded in the commit is a small pointer naming them:
+ *
+ *     version gitlet-lfs 1
+ *     oid <id of the contents>
+ *     size <length in bytes>
+ *
+ * Commits, merges, logs and status compare pointers only, so the
+ * large contents are read when a file is added and when it is
+ * written to a working directory, and at no other time. Identical
+ * contents share one object, and a clone brings objects down from its
+ * remotes only when they are first checked out.
+ * @author Max Miranda */
+class Lfs {
+
+    /** Returns the directory holding large objects. */
+    static File dir() {
+        return new File(Worktree.common(), LFS);
+    }
+
+    /** Returns the file holding the large object OID. */
+    static File object(String oid) {
+        return new File(dir(), oid);
+    }
+
+    /** Returns the text of the pointer to the contents OID of SIZE
+     * bytes. */
+    static String pointer(String oid, long size) {
+        return VERSION + "oid " + oid + "\nsize " + size + "\n";
+    }
+
+    /** Returns the id of the pointer blob to the contents OID of SIZE
+     * bytes. */
+    static String pointerId(String oid, long size) {
+        return Hashing.hash(pointer(oid, size)
+                            .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Returns the id of the contents the blob file BLOB points to, or
+     * null if it is not a pointer. Only a blob of a pointer's length
+     * is read. */
+    static String oidOf(File blob) {
+        long length = blob.length();
+        if (length < MIN_POINTER || length > MAX_POINTER) {
+            return null;
+        }
+        String text = Utils.readContentsAsString(blob);
+        if (!text.startsWith(VERSION + "oid ")) {
+            return null;
+        }
+        int start = VERSION.length() + "oid ".length();
+        return text.substring(start, text.indexOf('\n', start));
+    }
+
+    /** Returns the id of the contents the blob ID points to, or null
+     * if it is not a pointer. */
+    static String oidOf(String id) {
+        return oidOf(Worktree.blob(id));
+    }
+
+    /** Returns the file holding the contents of the blob ID: the large
+     * object if ID is a pointer, and the blob itself otherwise. */
+    static File content(String id) {
+        File blob = Worktree.blob(id);
+        String oid = oidOf(blob);
+        return oid == null ? blob : object(oid);
+    }
+
+    /** Stores the working file F in the large-object store, unless its
+     * contents are there already, and returns the id of the pointer
+     * blob to them, writing that too if need be. */
+    static String store(File f) {
+        String oid = Hashing.hashFile(f);
+        long size = f.length();
+        File object = object(oid);
+        if (!object.exists()) {
+            dir().mkdirs();
+            copy(f, object);
+        }
+        String id = pointerId(oid, size);
+        File blob = Worktree.blob(id);
+        if (!blob.exists()) {
+            Utils.writeContents(blob, pointer(oid, size));
+            blob.setReadOnly();
+        }
+        return id;
+    }
+
+    /** Returns the ids of those of the blobs IDS that are pointers to
+     * large objects this repository lacks. */
+    static List<String> missing(Collection<String> ids) {
+        return ids.stream().filter(id -> {
+            String oid = id == null ? null : oidOf(id);
+            return oid != null && !object(oid).exists();
+        }).distinct().collect(Collectors.toList());
+    }
+
+    /** Copies to this repository's store, from the first of the .gitlet
+     * directories SOURCES that has it, the large object each of the
+     * pointer blobs IDS points to. Returns false if any could not be
+     * found. */
+    static boolean fetch(Collection<String> ids, List<File> sources) {
+        boolean found = true;
+        for (String id : missing(ids)) {
+            File object = object(oidOf(id));
+            File source = null;
+            for (File dir : sources) {
+                File candidate = new File(new File(dir, LFS),
+                                          object.getName());
+                if (candidate.isFile()) {
+                    source = candidate;
+                    break;
+                }
+            }
+            if (source == null) {
+                found = false;
+            } else {
+                dir().mkdirs();
+                copy(source, object);
+            }
+        }
+        return found;
+    }
+
+    /** Copies to the large-object store of the .gitlet directory TO
+     * every object in that of FROM that it lacks. */
+    static void sync(File from, File to) {
+        List<String> names = Utils.plainFilenamesIn(new File(from, LFS));
+        if (names == null) {
+            return;
+        }
+        File dest = new File(to, LFS);
+        dest.mkdirs();
+        for (String name : names) {
+            File object = new File(dest, name);
+            if (!name.endsWith(".tmp") && !object.exists()) {
+                copy(new File(new File(from, LFS), name), object);
+            }
+        }
+    }
+
+    /** Copies SOURCE to the new read-only file DEST, by way of a
+     * temporary file, so that DEST is never seen half written. */
+    private static void copy(File source, File dest) {
+        File tmp = new File(dest.getPath() + ".tmp");
+        try {
+            Files.copy(source.toPath(), tmp.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp.toPath(), dest.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dest.setReadOnly();
+    }
+
+    /** Name of the large-object directory within .gitlet. */
+    private static final String LFS = "lfs";
+
+    /** First line of every pointer. */
+    private static final String VERSION = "version gitlet-lfs 1\n";
+
+    /** Shortest possible pointer: SHA-1 contents of under ten bytes. */
+    private static final int MIN_POINTER = VERSION.length() + 45 + 7;
+
+    /** Longest possible pointer: SHA-256 contents of the largest
+     * size. */
+    private static final int MAX_POINTER = VERSION.length() + 69 + 25;
+}
@@ -1,8 +1,15 @@
 package gitlet;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 
-/** Driver class for Gitlet, the tiny stupid version-control system.
+/** Driver class for Gitlet, the tiny stupid version-control system:
+ *  the command line over the Gitlet class.
  *  @author Max Miranda
  */
 public class Main {
@@ -11,37 +18,146 @@ public class Main {
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) {
         try {
-            if (args.length == 0) {
-                Utils.message("Please enter a command.");
-                throw new GitletException();
+            if (args.length > 0 && args[0].equals("batch")) {
+                batch(Arrays.copyOfRange(args, 1, args.length));
+            } else {
+                run(args, true);
             }
-            if (validCommand(args[0])) {
-                String[] operands = Arrays.copyOfRange(args, 1, args.length);
-                if (repoInitialized()) {
-                    myRepo = recoverMyRepo();
-                    hi(args, operands);
-                    File mr = new File(MRPATH);
-                    Utils.writeObject(mr, myRepo);
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+            System.exit(0);
+        }
+
+    }
+
+    /** Runs the command ARGS against the repository in the current
+     * directory, opening it first if this process has not yet done so,
+     * and saves it afterwards if SAVE. */
+    private static void run(String[] args, boolean save) {
+        if (args.length == 0) {
+            throw Utils.error("Please enter a command.");
+        }
+        if (!Gitlet.validCommand(args[0])) {
+            throw Utils.error("No command with that name exists.");
+        }
+        String[] operands = Arrays.copyOfRange(args, 1, args.length);
+        if (gitlet == null && repoInitialized()) {
+            gitlet = Gitlet.open();
+        }
+        if (gitlet != null) {
+            gitlet.setOutput(System.out);
+            gitlet.run(args, save);
+        } else if (args[0].equals("init")) {
+            gitlet = Gitlet.init(hashAlgorithm(operands));
+        } else if (args[0].equals("clone")) {
+            cloneRepo(operands);
+        } else {
+            throw Utils.error("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /** Runs the commands listed, one per line, in the file named by
+     * the first of OPERANDS ("-" for the standard input) against a
+     * single repository kept in memory. Operands are separated by
+     * blanks and may be quoted; blank lines and lines starting with #
+     * are skipped. A command that fails prints its message and leaves
+     * the repository as it was, just as it would on its own, and the
+     * rest of the commands still run. The repository is saved at the
+     * end, and also after every N commands if the operands include
+     * --checkpoint=N. Any other error ends the batch, once the
+     * repository, as it was before the failing command, is saved; the
+     * references that command changed are put back, so the two still
+     * agree. */
+    private static void batch(String[] operands) {
+        int checkpoint = 0;
+        if (operands.length == 2
+            && operands[1].matches("--checkpoint=[1-9][0-9]*")) {
+            checkpoint = Integer.parseInt(operands[1].substring(13));
+        } else if (operands.length != 1) {
+            throw Utils.error("Incorrect operands.");
+        }
+        try (BufferedReader script = openScript(operands[0])) {
+            int pending = 0;
+            for (String line = script.readLine(); line != null;
+                 line = script.readLine()) {
+                String[] args = tokenize(line);
+                if (args.length == 0 || args[0].startsWith("#")) {
+                    continue;
+                }
+                try {
+                    run(args, false);
+                } catch (GitletException e) {
+                    System.out.println(e.getMessage());
+                } catch (RuntimeException e) {
+                    saveMyRepo();
+                    throw e;
+                }
+                pending += 1;
+                if (checkpoint > 0 && pending >= checkpoint) {
+                    saveMyRepo();
+                    pending = 0;
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        saveMyRepo();
+    }
+
+    /** Returns a reader of the batch script NAME, "-" meaning the
+     * standard input. */
+    private static BufferedReader openScript(String name)
+        throws IOException {
+        if (name.equals("-")) {
+            return new BufferedReader(new InputStreamReader(System.in,
+                StandardCharsets.UTF_8));
+        }
+        File script = new File(name);
+        if (!script.isFile()) {
+            throw Utils.error("File does not exist.");
+        }
+        return Files.newBufferedReader(script.toPath(),
+                                       StandardCharsets.UTF_8);
+    }
+
+    /** Returns the words of LINE, which are separated by blanks. A
+     * word may be enclosed in double or single quotes, so that it can
+     * contain blanks. */
+    private static String[] tokenize(String line) {
+        ArrayList<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (char c : line.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
                 } else {
-                    if (args[0].equals("init")) {
-                        myRepo = new Repo();
-                        File mr = new File(MRPATH);
-                        Utils.writeObject(mr, myRepo);
-                    } else {
-                        String s;
-                        s = "Not in an initialized Gitlet directory.";
-                        Utils.message(s);
-                        throw new GitletException();
-                    }
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                word = word == null ? new StringBuilder() : word;
+            } else if (Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
                 }
             } else {
-                Utils.message("No command with that name exists.");
-                throw new GitletException();
+                word = word == null ? new StringBuilder() : word;
+                word.append(c);
             }
-        } catch (GitletException e) {
-            System.exit(0);
         }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
 
+    /** Writes the repository, if one is open, to its file. */
+    private static void saveMyRepo() {
+        if (gitlet != null) {
+            gitlet.save();
+        }
     }
 
     /** Checks that there is not already a .gitlet directory
@@ -56,104 +172,45 @@ public class Main {
         return false;
     }
 
-    /** Takes in a string ARG word, will return whether or not
-     * it is a valid command. */
-    private static boolean validCommand(String arg) {
-        for (String command: commands) {
-            if (arg.equals(command)) {
-                return true;
-            }
+    /** Opens a new repository as a clone described by OPERANDS: the
+     * path of the remote .gitlet directory, optionally followed by
+     * --depth=<n> and --filter=blob:none. */
+    private static void cloneRepo(String[] operands) {
+        if (operands.length == 0) {
+            throw Utils.error("Incorrect operands.");
         }
-        return false;
-    }
-
-    /** Takes in String[] ARGS and String OPERANDS. */
-    private static void hi(String[] args, String[] operands) {
-        String already = "A Gitlet version-control system "
-                + "already exists in the current directory.";
-        switch (args[0]) {
-        case "init":
-            Utils.message(already);
-            throw new GitletException();
-        case "add":
-            myRepo.add(operands[0]);
-            break;
-        case "commit":
-            myRepo.commit(operands[0]);
-            break;
-        case "rm":
-            myRepo.rm(operands[0]);
-            break;
-        case "log":
-            myRepo.logCommits();
-            break;
-        case "global-log":
-            myRepo.globalLog();
-            break;
-        case "find":
-            myRepo.find(operands[0]);
-            break;
-        case "status":
-            myRepo.status();
-            break;
-        case "checkout":
-            if (operands.length == 1) {
-                myRepo.checkout(operands[0]);
+        int depth = -1;
+        boolean blobs = true;
+        for (int i = 1; i < operands.length; i += 1) {
+            if (operands[i].equals("--filter=blob:none")) {
+                blobs = false;
+            } else if (operands[i].matches("--depth=[1-9][0-9]*")) {
+                depth = Integer.parseInt(operands[i].substring(8));
             } else {
-                myRepo.checkout(operands);
+                throw Utils.error("Incorrect operands.");
             }
-            break;
-        case "branch":
-            myRepo.branch(operands[0]);
-            break;
-        case "rm-branch":
-            myRepo.rmBranch(operands[0]);
-            break;
-        case "reset":
-            myRepo.reset(operands[0]);
-            break;
-        case "merge":
-            myRepo.merge(operands[0]);
-            break;
-        default:
-            Utils.message("something wrong");
         }
-    }
-    /** Will do the work of actually saving our information
-     * from the repo. It returns the existing repo, assuming
-     * that there is one. */
-    public static Repo recoverMyRepo() {
-        File mr =  new File(MRPATH);
-        return Utils.readObject(mr, Repo.class);
-    }
-
-    /********************** VARIABLES ************************/
-
-    /** Returns myRepo.*/
-    public Repo getMyRepo() {
-        return myRepo;
-    }
-
-    /** Returns commands.*/
-    public String[] getCommands() {
-        return commands;
+        gitlet = Gitlet.cloneFrom(operands[0], depth, blobs);
     }
 
-    /** Returns repo's path. */
-    public String getMrpath() {
-        return MRPATH;
+    /** Returns the hash algorithm chosen by the OPERANDS of init:
+     * none, or --object-format=sha1 or --object-format=sha256. */
+    private static String hashAlgorithm(String[] operands) {
+        if (operands.length == 0) {
+            return Hashing.SHA1;
+        } else if (operands.length == 1) {
+            switch (operands[0]) {
+            case "--object-format=sha1":
+                return Hashing.SHA1;
+            case "--object-format=sha256":
+                return Hashing.SHA256;
+            default:
+                break;
+            }
+        }
+        throw Utils.error("Incorrect operands.");
     }
-    /** Array of possible valid commands. */
-    private static String[] commands = new String[] {"init", "add",
-        "commit", "rm", "log", "global-log",
-        "find", "status", "checkout",
-        "branch", "rm-branch", "reset", "merge"};
-
-    /** The thing that controls everything. */
-    private static Repo myRepo;
-
-    /** Path to that Repo's file. */
-    private static final String MRPATH = ".gitlet/myrepo";
-
 
+    /** The repository commands are run against, once opened. */
+    private static Gitlet gitlet;
 }
@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/** Populates the working directory from the blob store, in one of
+ * several ways chosen by the checkout.mode setting:
+ * "copy" reads and writes each blob through BlobPrefetcher;
+ * "transfer" lets the kernel copy each blob with
+ * FileChannel.transferTo, which on many systems never moves the data
+ * through user space and may share extents on filesystems that
+ * support cloning; and "link" hard links each working file to its
+ * blob, falling back to "transfer" where links are impossible.
+ *
+ * Blobs are kept read-only, so a linked working file cannot be edited
+ * in place by accident, and gitlet itself always removes a working
+ * file before writing it, so a link is broken rather than written
+ * through. Neither protects against a user who can ignore permissions,
+ * such as root, or an editor that makes the file writable and rewrites
+ * it in place, and nothing gitlet does between commands can: such a
+ * write silently changes the blob, and with it every commit that
+ * tracks it, and the old contents are lost. Status then shows the file
+ * as modified, and fsck reports the blob as corrupt and linked to a
+ * working file. Link mode is therefore unsafe: it is never the
+ * default, choosing it prints a warning, and it should be used only
+ * where working files are replaced rather than rewritten. "transfer",
+ * which may share extents too, carries no such risk.
+ * @author Max Miranda */
+class Materializer {
+
+    /** Writes every file named in FILES, which maps working file
+     * names to blob ids, in the way named by MODE (null meaning
+     * "copy"). */
+    static void materialize(Map<String, String> files, String mode) {
+        materialize(files, mode, null);
+    }
+
+    /** As for materialize(FILES, MODE), but writing the files into the
+     * working directory WORK rather than the current one. */
+    static void materialize(Map<String, String> files, String mode,
+                            File work) {
+        if (files == null) {
+            return;
+        }
+        if (mode == null || mode.equals(COPY)) {
+            BlobPrefetcher.materialize(files, work);
+            return;
+        }
+        boolean link = mode.equals(LINK);
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            place(new File(work, e.getKey()).toPath(), e.getValue(), link);
+        }
+    }
+
+    /** Returns true iff MODE names a way of populating the working
+     * directory. */
+    static boolean isMode(String mode) {
+        return mode.equals(COPY) || mode.equals(TRANSFER)
+            || mode.equals(LINK);
+    }
+
+    /** Replaces TARGET by the contents of the blob ID, as a hard link
+     * if LINK and possible, and as a kernel-side copy otherwise. */
+    private static void place(Path target, String id, boolean link) {
+        Path blob = Lfs.content(id).toPath();
+        try {
+            Files.deleteIfExists(target);
+            if (link) {
+                try {
+                    Files.createLink(target, blob);
+                    return;
+                } catch (IOException | UnsupportedOperationException e) {
+                    /* Different filesystem, say; copy instead. */
+                }
+            }
+            try (FileChannel in = FileChannel.open(blob);
+                 FileChannel out = FileChannel.open(target,
+                     StandardOpenOption.CREATE_NEW,
+                     StandardOpenOption.WRITE)) {
+                long size = in.size();
+                for (long pos = 0; pos < size;) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Mode that reads and writes each blob. */
+    static final String COPY = "copy";
+
+    /** Mode that copies each blob with FileChannel.transferTo. */
+    static final String TRANSFER = "transfer";
+
+    /** Mode that hard links each working file to its blob. */
+    static final String LINK = "link";
+}
@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** A store kept entirely on the heap, for tests, benchmarks and tools
+ * that want a repository without touching the disk. Objects are held
+ * as the bytes they would have on disk, so a commit read back is a
+ * fresh copy that its reader may change freely. Any number of threads
+ * may read and write it at once; nothing is kept once it is dropped.
+ * @author Max Miranda */
+public class MemoryStore implements ObjectStore {
+
+    @Override
+    public boolean has(Kind kind, String id) {
+        return objects(kind).containsKey(id);
+    }
+
+    @Override
+    public byte[] read(Kind kind, String id) {
+        byte[] contents = objects(kind).get(id);
+        return contents == null ? null : contents.clone();
+    }
+
+    @Override
+    public void write(Kind kind, String id, byte[] contents) {
+        objects(kind).putIfAbsent(id, contents.clone());
+    }
+
+    @Override
+    public List<String> list(Kind kind) {
+        List<String> result = new ArrayList<String>(objects(kind).keySet());
+        Collections.sort(result);
+        return result;
+    }
+
+    @Override
+    public References refs() {
+        return _refs;
+    }
+
+    /** Returns the objects of kind KIND, by id. */
+    private ConcurrentMap<String, byte[]> objects(Kind kind) {
+        return kind == Kind.COMMIT ? _commits : _blobs;
+    }
+
+    /** References kept in a sorted map, so that those with a common
+     * prefix are found together. */
+    private static class MemoryReferences implements References {
+
+        @Override
+        public String resolve(String name) {
+            return _refs.get(name);
+        }
+
+        @Override
+        public void update(String name, String id) {
+            _refs.put(name, id);
+        }
+
+        @Override
+        public void delete(String name) {
+            _refs.remove(name);
+        }
+
+        @Override
+        public SortedMap<String, String> list(String prefix) {
+            int cut = prefix.indexOf('/', "refs/".length()) + 1;
+            TreeMap<String, String> result = new TreeMap<String, String>();
+            for (Map.Entry<String, String> e
+                     : _refs.tailMap(prefix).entrySet()) {
+                if (!e.getKey().startsWith(prefix)) {
+                    break;
+                }
+                result.put(e.getKey().substring(cut), e.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void replace(Map<String, String> refs) {
+            _refs.clear();
+            _refs.putAll(refs);
+        }
+
+        @Override
+        public void pack() {
+        }
+
+        /** Full reference names, mapped to ids. */
+        private final ConcurrentSkipListMap<String, String> _refs =
+            new ConcurrentSkipListMap<String, String>();
+    }
+
+    /** Commits and blobs, by id. */
+    private final ConcurrentMap<String, byte[]> _commits =
+        new ConcurrentHashMap<String, byte[]>(),
+        _blobs = new ConcurrentHashMap<String, byte[]>();
+
+    /** The references. */
+    private final References _refs = new MemoryReferences();
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** A working tree kept on the heap, to go with a MemoryStore. Each
+ * file is stamped with the time it was written, as one on disk would
+ * be, so the stat cache works as it does there.
+ * @author Max Miranda */
+public class MemoryWorkingTree implements WorkingTree {
+
+    @Override
+    public List<String> files() {
+        return new ArrayList<String>(_files.keySet());
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return _files.containsKey(name);
+    }
+
+    @Override
+    public long length(String name) {
+        Entry f = _files.get(name);
+        return f == null ? 0 : f.contents.length;
+    }
+
+    @Override
+    public long lastModified(String name) {
+        Entry f = _files.get(name);
+        return f == null ? 0 : f.modified;
+    }
+
+    @Override
+    public byte[] read(String name) {
+        Entry f = _files.get(name);
+        if (f == null) {
+            throw new IllegalArgumentException(name + " does not exist");
+        }
+        return f.contents.clone();
+    }
+
+    @Override
+    public void write(String name, byte[] contents) {
+        _files.put(name, new Entry(contents.clone(),
+                                   System.currentTimeMillis()));
+    }
+
+    /** Writes the file NAME holding the UTF-8 encoding of CONTENTS. */
+    public void write(String name, String contents) {
+        write(name, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void delete(String name) {
+        _files.remove(name);
+    }
+
+    /** The contents of one file and the time they were written. */
+    private static class Entry {
+        /** A file holding CONTENTS, written at MODIFIED. */
+        Entry(byte[] contents, long modified) {
+            this.contents = contents;
+            this.modified = modified;
+        }
+
+        /** Contents. */
+        private final byte[] contents;
+
+        /** Time written, in milliseconds since the epoch. */
+        private final long modified;
+    }
+
+    /** Files by name. */
+    private final ConcurrentSkipListMap<String, Entry> _files =
+        new ConcurrentSkipListMap<String, Entry>();
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Rewrites the commits of a repository written by a version of
+ * gitlet that computed commit ids differently, so that every commit
+ * is stored under the id its contents hash to today. A commit's id
+ * covers its parents' ids, so commits are rewritten parents first.
+ * @author Max Miranda */
+class Migrator {
+
+    /** Writes a rewritten copy of every commit in .gitlet/commits whose
+     * id is out of date and returns a map from each old id to its new
+     * one (equal for commits that did not change). The old commits are
+     * left in place until retire is called, once nothing refers to
+     * them any more. */
+    static Map<String, String> rewriteCommits() {
+        Map<String, String> renames = new HashMap<String, String>();
+        for (String uid : Utils.plainFilenamesIn(Worktree.commits())) {
+            rewrite(uid, renames);
+        }
+        return renames;
+    }
+
+    /** Deletes the old commits named in RENAMES, as returned by
+     * rewriteCommits, and checks that the new ones hash to their
+     * ids. */
+    static void retire(Map<String, String> renames) {
+        for (Map.Entry<String, String> e : renames.entrySet()) {
+            if (!e.getKey().equals(e.getValue())) {
+                Worktree.commit(e.getKey()).delete();
+            }
+        }
+        for (String uid : renames.values()) {
+            Commit comm = read(uid);
+            if (!comm.hashCommit().equals(uid)) {
+                throw new IllegalArgumentException("migration failed at "
+                                                   + uid);
+            }
+        }
+    }
+
+    /** Rewrites the commit ROOT and whichever of its ancestors are not
+     * yet in RENAMES, recording the new ids in RENAMES. The walk keeps
+     * its own stack, since histories may be far deeper than the call
+     * stack. */
+    private static void rewrite(String root, Map<String, String> renames) {
+        Deque<String> stack = new ArrayDeque<String>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            String uid = stack.peek();
+            if (renames.containsKey(uid)) {
+                stack.pop();
+                continue;
+            }
+            Commit comm = read(uid);
+            String[] parents = comm.getParents();
+            boolean ready = true;
+            if (parents != null) {
+                for (String parent : parents) {
+                    boolean present = Worktree.commit(parent).exists();
+                    if (present && !renames.containsKey(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            String[] newParents = null;
+            if (parents != null) {
+                newParents = new String[parents.length];
+                for (int i = 0; i < parents.length; i += 1) {
+                    newParents[i] = renames.getOrDefault(parents[i],
+                                                         parents[i]);
+                }
+            }
+            Commit updated = new Commit(comm.getMessage(), comm.getFiles(),
+                                        newParents, comm.getTimestamp());
+            String newID = updated.getUniversalID();
+            if (!newID.equals(uid)) {
+                Utils.writeObject(Worktree.commit(newID), updated);
+            }
+            renames.put(uid, newID);
+            stack.pop();
+        }
+    }
+
+    /** Returns the commit stored under UID. */
+    private static Commit read(String uid) {
+        return Utils.readObject(Worktree.commit(uid), Commit.class);
+    }
+}
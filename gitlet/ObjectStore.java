@@ -0,0 +1,48 @@
+package gitlet;
+
+import java.util.List;
+
+/** Where a repository keeps its commits, blobs and references. Objects
+ * are named by the hashes of their contents and never change once
+ * written, so a store may be read from any number of threads; each
+ * implementation says how far it may also be written concurrently.
+ * FileStore keeps them in a .gitlet directory, as the command line
+ * does; PackStore reads them from a memory-mapped pack; MemoryStore
+ * keeps them on the heap.
+ * @author Max Miranda */
+public interface ObjectStore {
+
+    /** The kinds of object. */
+    enum Kind {
+        /** A serialized Commit. */
+        COMMIT,
+        /** The contents of a file. */
+        BLOB
+    }
+
+    /** Returns true iff the object ID of kind KIND is stored. */
+    boolean has(Kind kind, String id);
+
+    /** Returns the contents of the object ID of kind KIND, or null if
+     * it is not stored. */
+    byte[] read(Kind kind, String id);
+
+    /** Stores CONTENTS as the object ID of kind KIND, unless it is
+     * stored already. */
+    void write(Kind kind, String id, byte[] contents);
+
+    /** Returns the ids of the stored objects of kind KIND, in order. */
+    List<String> list(Kind kind);
+
+    /** Stores the file NAME of the working tree WORK as a blob, unless
+     * it is stored already, and returns the blob's id. */
+    default String storeFile(WorkingTree work, String name) {
+        byte[] contents = work.read(name);
+        String id = Hashing.hash(contents);
+        write(Kind.BLOB, id, contents);
+        return id;
+    }
+
+    /** Returns the references of this store. */
+    References refs();
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A pack is a single stream holding many objects, used to move
+ * history between repositories without a file-by-file copy. Each
+ * pack begins with a magic number and an object count, followed by
+ * one record per object: a kind byte, the object id, its length,
+ * and its raw bytes.
+ * @author Max Miranda */
+class Pack {
+
+    /** Writes a pack of the COMMITS and BLOBS stored in the .gitlet
+     * directory SRC to OUT. */
+    static void write(OutputStream out, File src,
+                      Collection<String> commits, Collection<String> blobs)
+        throws IOException {
+        DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out, BUFFER));
+        data.writeInt(MAGIC);
+        data.writeInt(commits.size() + blobs.size());
+        for (String id : commits) {
+            writeObject(data, COMMIT, id, new File(src, "commits/" + id));
+        }
+        for (String id : blobs) {
+            writeObject(data, BLOB, id, new File(src, "staging/" + id));
+        }
+        data.flush();
+    }
+
+    /** Writes a pack of the COMMITS and BLOBS held in STORE to OUT. */
+    static void write(OutputStream out, ObjectStore store,
+                      Collection<String> commits, Collection<String> blobs)
+        throws IOException {
+        DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out, BUFFER));
+        data.writeInt(MAGIC);
+        data.writeInt(commits.size() + blobs.size());
+        for (String id : commits) {
+            writeObject(data, COMMIT, id,
+                        store.read(ObjectStore.Kind.COMMIT, id));
+        }
+        for (String id : blobs) {
+            writeObject(data, BLOB, id, store.read(ObjectStore.Kind.BLOB, id));
+        }
+        data.flush();
+    }
+
+    /** Appends one record of KIND for the object ID held in FILE to
+     * DATA. */
+    private static void writeObject(DataOutputStream data, byte kind,
+                                    String id, File file)
+        throws IOException {
+        data.writeByte(kind);
+        data.writeUTF(id);
+        data.writeLong(file.length());
+        Files.copy(file.toPath(), data);
+    }
+
+    /** Appends one record of KIND for the object ID, whose contents are
+     * CONTENTS, to DATA. */
+    private static void writeObject(DataOutputStream data, byte kind,
+                                    String id, byte[] contents)
+        throws IOException {
+        data.writeByte(kind);
+        data.writeUTF(id);
+        data.writeLong(contents.length);
+        data.write(contents);
+    }
+
+    /** Reads a pack from IN, storing every object it holds into the
+     * .gitlet directory DEST. Objects DEST already has are skipped.
+     * Every object is written to a temporary file and checked: its id
+     * must be a well-formed id under the algorithm in use, and its
+     * contents must hash to it. Only once all have passed are they
+     * moved into place, so a pack with any bad object changes nothing.
+     * Returns the number of objects read. */
+    static int read(InputStream in, File dest) throws IOException {
+        DataInputStream data =
+            new DataInputStream(new BufferedInputStream(in, BUFFER));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("not a gitlet pack");
+        }
+        int count = data.readInt();
+        byte[] buf = new byte[BUFFER];
+        Map<File, File> received = new LinkedHashMap<File, File>();
+        List<File> blobs = new ArrayList<File>();
+        try {
+            for (int i = 0; i < count; i += 1) {
+                byte kind = data.readByte();
+                String id = data.readUTF();
+                long length = data.readLong();
+                if (kind != COMMIT && kind != BLOB
+                    || !id.matches("[0-9a-f]{" + Hashing.idLength() + "}")) {
+                    throw Utils.error("The remote sent a corrupt object.");
+                }
+                String dir = kind == COMMIT ? "commits/" : "staging/";
+                File target = new File(dest, dir + id);
+                if (target.exists()) {
+                    skip(data, length);
+                    continue;
+                }
+                File tmp = new File(dest, dir + id + ".tmp");
+                received.put(tmp, target);
+                if (kind == BLOB) {
+                    blobs.add(target);
+                }
+                MessageDigest md = Hashing.digest();
+                try (OutputStream obj = Files.newOutputStream(tmp.toPath())) {
+                    while (length > 0) {
+                        int n = data.read(buf, 0,
+                                          (int) Math.min(buf.length, length));
+                        if (n < 0) {
+                            throw new EOFException("truncated pack");
+                        }
+                        obj.write(buf, 0, n);
+                        md.update(buf, 0, n);
+                        length -= n;
+                    }
+                }
+                String actual = kind == BLOB ? Hashing.toHex(md.digest())
+                    : commitId(tmp);
+                if (!id.equals(actual)) {
+                    throw Utils.error("The remote sent a corrupt object.");
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            for (File tmp : received.keySet()) {
+                tmp.delete();
+            }
+            throw excp;
+        }
+        for (Map.Entry<File, File> e : received.entrySet()) {
+            Files.move(e.getKey().toPath(), e.getValue().toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (File blob : blobs) {
+            blob.setReadOnly();
+        }
+        return count;
+    }
+
+    /** Returns the id the commit stored in F hashes to, or null if F
+     * does not hold a commit. */
+    private static String commitId(File f) {
+        try {
+            return Utils.readObject(f, Commit.class).hashCommit();
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Discards the next LENGTH bytes of DATA. */
+    private static void skip(DataInputStream data, long length)
+        throws IOException {
+        while (length > 0) {
+            long n = data.skip(length);
+            if (n <= 0) {
+                throw new EOFException("truncated pack");
+            }
+            length -= n;
+        }
+    }
+
+    /** Leading magic number of a pack: "GPAK". */
+    static final int MAGIC = 0x4750414b;
+
+    /** Record kind of a serialized commit. */
+    static final byte COMMIT = 'C';
+
+    /** Record kind of a blob. */
+    static final byte BLOB = 'B';
+
+    /** Size of stream buffers. */
+    private static final int BUFFER = 1 << 16;
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/** A store whose objects are read from a pack file, in the format Pack
+ * writes, mapped into memory. The pack is indexed once when opened;
+ * after that an object is found by one hash lookup and copied straight
+ * out of the mapping, with no system call. Objects written after the
+ * pack was made, and all references, go to another store, the overlay,
+ * which is also searched for objects the pack lacks. A pack must be
+ * smaller than 2 GiB. Reading is safe from any number of threads;
+ * writing is as safe as the overlay makes it.
+ * @author Max Miranda */
+public class PackStore implements ObjectStore {
+
+    /** The store reading objects from the pack file PACK, with OVERLAY
+     * holding everything else. */
+    public PackStore(File pack, ObjectStore overlay) throws IOException {
+        _overlay = overlay;
+        try (FileChannel in = FileChannel.open(pack.toPath())) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw new IOException("pack too large to map");
+            }
+            _data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        ByteBuffer data = _data.duplicate();
+        if (data.remaining() < 2 * Integer.BYTES
+            || data.getInt() != Pack.MAGIC) {
+            throw new IOException("not a gitlet pack");
+        }
+        int count = data.getInt();
+        for (int i = 0; i < count; i += 1) {
+            byte kind = data.get();
+            byte[] id = new byte[data.getShort() & 0xffff];
+            data.get(id);
+            long length = data.getLong();
+            if (length < 0 || length > data.remaining()) {
+                throw new IOException("truncated pack");
+            }
+            Map<String, long[]> index = kind == Pack.COMMIT ? _commits
+                : _blobs;
+            index.put(new String(id, StandardCharsets.UTF_8),
+                      new long[] {data.position(), length});
+            data.position(data.position() + (int) length);
+        }
+    }
+
+    /** Writes to the file PACK a pack of every object in SOURCE. */
+    public static void create(File pack, ObjectStore source)
+        throws IOException {
+        try (OutputStream out = new FileOutputStream(pack)) {
+            Pack.write(out, source, source.list(Kind.COMMIT),
+                       source.list(Kind.BLOB));
+        }
+    }
+
+    @Override
+    public boolean has(Kind kind, String id) {
+        return index(kind).containsKey(id) || _overlay.has(kind, id);
+    }
+
+    @Override
+    public byte[] read(Kind kind, String id) {
+        long[] entry = index(kind).get(id);
+        if (entry == null) {
+            return _overlay.read(kind, id);
+        }
+        byte[] result = new byte[(int) entry[1]];
+        ByteBuffer data = _data.duplicate();
+        data.position((int) entry[0]);
+        data.get(result);
+        return result;
+    }
+
+    @Override
+    public void write(Kind kind, String id, byte[] contents) {
+        if (!index(kind).containsKey(id)) {
+            _overlay.write(kind, id, contents);
+        }
+    }
+
+    @Override
+    public List<String> list(Kind kind) {
+        TreeSet<String> ids = new TreeSet<String>(index(kind).keySet());
+        ids.addAll(_overlay.list(kind));
+        return Collections.unmodifiableList(new ArrayList<String>(ids));
+    }
+
+    /** Stores the file in the overlay, by whatever means it has. */
+    @Override
+    public String storeFile(WorkingTree work, String name) {
+        return _overlay.storeFile(work, name);
+    }
+
+    @Override
+    public References refs() {
+        return _overlay.refs();
+    }
+
+    /** Returns the index of the packed objects of kind KIND: each id
+     * mapped to the offset and length of its contents. */
+    private Map<String, long[]> index(Kind kind) {
+        return kind == Kind.COMMIT ? _commits : _blobs;
+    }
+
+    /** The mapped pack. Never read directly, since a buffer's position
+     * is not safe to share; each reader works on a duplicate. */
+    private final MappedByteBuffer _data;
+
+    /** Indexes of the packed commits and blobs. */
+    private final HashMap<String, long[]> _commits =
+        new HashMap<String, long[]>(), _blobs = new HashMap<String, long[]>();
+
+    /** Where everything not in the pack is kept. */
+    private final ObjectStore _overlay;
+}
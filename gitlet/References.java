@@ -0,0 +1,34 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+/** The named references of a repository: branches, named with the
+ * prefix Refs.HEADS, and tags, named with Refs.TAGS, each mapped to
+ * the id of an object.
+ * @author Max Miranda */
+public interface References {
+
+    /** Returns the id that the reference NAME refers to, or null if
+     * there is no such reference. */
+    String resolve(String name);
+
+    /** Makes the reference NAME refer to ID. */
+    void update(String name, String id);
+
+    /** Removes the reference NAME, if there is one. */
+    void delete(String name);
+
+    /** Returns the references whose names start with PREFIX, which
+     * must be Refs.HEADS or Refs.TAGS or begin with one of them, mapped
+     * from their names without Refs.HEADS or Refs.TAGS to their ids, in
+     * order. */
+    SortedMap<String, String> list(String prefix);
+
+    /** Makes REFS, which maps full reference names to ids, the only
+     * references. */
+    void replace(Map<String, String> refs);
+
+    /** Compacts the stored references, where that means anything. */
+    void pack();
+}
@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** The named references of a .gitlet directory: branches, under
+ * refs/heads/, and tags, under refs/tags/. Most references live in
+ * one file, packed-refs, as lines "<id> <name>" sorted by name, which
+ * is searched in place by bisection, so that finding one reference or
+ * those with a given prefix takes time logarithmic in their number.
+ * References changed since the last packing are loose: each is a file
+ * of its own under refs/, overriding the packed entry, or holding "-"
+ * if the reference was deleted. Creating, moving or deleting a
+ * reference thus writes only that reference; pack() folds the loose
+ * ones back into the packed file.
+ * @author Max Miranda */
+class Refs implements References {
+
+    /** Prefix of the names of branches. */
+    static final String HEADS = "refs/heads/";
+
+    /** Prefix of the names of tags. */
+    static final String TAGS = "refs/tags/";
+
+    /** The references of the .gitlet directory DIR. */
+    Refs(File dir) {
+        _dir = dir;
+    }
+
+    /** Returns the id that the reference NAME refers to, or null if
+     * there is no such reference. */
+    @Override
+    public String resolve(String name) {
+        File loose = loose(name);
+        if (loose.isFile()) {
+            String id = Utils.readContentsAsString(loose);
+            return id.equals(DELETED) ? null : id;
+        }
+        return packedLookup(name);
+    }
+
+    /** Makes the reference NAME refer to ID. */
+    @Override
+    public void update(String name, String id) {
+        write(loose(name), id);
+    }
+
+    /** Removes the reference NAME, if there is one. */
+    @Override
+    public void delete(String name) {
+        if (packedLookup(name) != null) {
+            write(loose(name), DELETED);
+        } else {
+            loose(name).delete();
+        }
+    }
+
+    /** Returns the references whose names start with PREFIX, which
+     * must be HEADS or TAGS or begin with one of them, mapped from
+     * their names without HEADS or TAGS to their ids, in order. */
+    @Override
+    public SortedMap<String, String> list(String prefix) {
+        int cut = prefix.indexOf('/', REFS.length()) + 1;
+        String space = prefix.substring(0, cut);
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, String> e : packedRange(prefix).entrySet()) {
+            result.put(e.getKey().substring(cut), e.getValue());
+        }
+        for (String file : looseFiles(new File(_dir, space))) {
+            String name = space + decode(file);
+            if (!name.startsWith(prefix) || file.endsWith(".tmp")) {
+                continue;
+            }
+            String id = Utils.readContentsAsString(new File(_dir,
+                                                            space + file));
+            if (id.equals(DELETED)) {
+                result.remove(name.substring(cut));
+            } else {
+                result.put(name.substring(cut), id);
+            }
+        }
+        return result;
+    }
+
+    /** Rewrites the packed file to hold every reference, and removes
+     * the loose ones. */
+    @Override
+    public void pack() {
+        TreeMap<String, String> all = new TreeMap<String, String>();
+        for (String space : new String[] {HEADS, TAGS}) {
+            for (Map.Entry<String, String> e : list(space).entrySet()) {
+                all.put(space + e.getKey(), e.getValue());
+            }
+        }
+        replace(all);
+    }
+
+    /** Makes REFS, which maps full reference names to ids, the only
+     * references, all packed. */
+    @Override
+    public void replace(Map<String, String> refs) {
+        StringBuilder packed = new StringBuilder(HEADER);
+        for (Map.Entry<String, String> e
+                 : new TreeMap<String, String>(refs).entrySet()) {
+            packed.append(e.getValue()).append(' ').append(e.getKey())
+                .append('\n');
+        }
+        write(new File(_dir, PACKED), packed.toString());
+        for (String space : new String[] {HEADS, TAGS}) {
+            File dir = new File(_dir, space);
+            for (String file : looseFiles(dir)) {
+                new File(dir, file).delete();
+            }
+        }
+    }
+
+    /** Returns the id the packed file gives for NAME, or null. */
+    private String packedLookup(String name) {
+        MappedByteBuffer data = mapPacked();
+        if (data == null) {
+            return null;
+        }
+        int lo = HEADER.length(), hi = data.limit();
+        while (lo < hi) {
+            int start = lineStart(data, (lo + hi) >>> 1);
+            int end = lineEnd(data, start);
+            String[] entry = entry(data, start, end);
+            int cmp = entry[1].compareTo(name);
+            if (cmp == 0) {
+                return entry[0];
+            } else if (cmp < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the packed references whose names start with PREFIX,
+     * found by bisecting for the first and reading on from there. */
+    private SortedMap<String, String> packedRange(String prefix) {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        MappedByteBuffer data = mapPacked();
+        if (data == null) {
+            return result;
+        }
+        int lo = HEADER.length(), hi = data.limit();
+        while (lo < hi) {
+            int start = lineStart(data, (lo + hi) >>> 1);
+            int end = lineEnd(data, start);
+            if (entry(data, start, end)[1].compareTo(prefix) < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        for (int start = lo; start < data.limit();) {
+            int end = lineEnd(data, start);
+            String[] entry = entry(data, start, end);
+            if (!entry[1].startsWith(prefix)) {
+                break;
+            }
+            result.put(entry[1], entry[0]);
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /** Returns the packed file, mapped, or null if there is none. */
+    private MappedByteBuffer mapPacked() {
+        File packed = new File(_dir, PACKED);
+        if (!packed.isFile()) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(packed.toPath())) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the position of the start of the line of DATA holding
+     * the byte at POS. */
+    private static int lineStart(MappedByteBuffer data, int pos) {
+        while (pos > 0 && data.get(pos - 1) != '\n') {
+            pos -= 1;
+        }
+        return pos;
+    }
+
+    /** Returns the position of the newline ending the line of DATA
+     * that starts at START. */
+    private static int lineEnd(MappedByteBuffer data, int start) {
+        int pos = start;
+        while (pos < data.limit() && data.get(pos) != '\n') {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Returns the id and the name in the line of DATA from START to
+     * END. */
+    private static String[] entry(MappedByteBuffer data, int start,
+                                  int end) {
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; i += 1) {
+            line[i] = data.get(start + i);
+        }
+        String text = new String(line, StandardCharsets.UTF_8);
+        int space = text.indexOf(' ');
+        return new String[] {text.substring(0, space),
+                             text.substring(space + 1)};
+    }
+
+    /** Returns the names of the files in DIR, which may not exist. */
+    private static List<String> looseFiles(File dir) {
+        List<String> files = Utils.plainFilenamesIn(dir);
+        return files == null ? new ArrayList<String>() : files;
+    }
+
+    /** Returns the loose file for the reference NAME. Everything after
+     * the reference's namespace is encoded into a single file name, so
+     * that a branch "a" and a branch "a/b" can both exist. */
+    private File loose(String name) {
+        int cut = name.indexOf('/', REFS.length()) + 1;
+        return new File(_dir, name.substring(0, cut)
+                        + encode(name.substring(cut)));
+    }
+
+    /** Returns NAME with '%' and '/' escaped. */
+    private static String encode(String name) {
+        return name.replace("%", "%25").replace("/", "%2F");
+    }
+
+    /** Returns the name encoded as FILE. */
+    private static String decode(String file) {
+        return file.replace("%2F", "/").replace("%25", "%");
+    }
+
+    /** Replaces the contents of F by CONTENTS in one step, so that a
+     * reader sees either the old contents or the new. */
+    private static void write(File f, String contents) {
+        f.getParentFile().mkdirs();
+        File tmp = new File(f.getPath() + ".tmp");
+        Utils.writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), f.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Name of the packed file. */
+    private static final String PACKED = "packed-refs";
+
+    /** First line of the packed file. */
+    private static final String HEADER = "# gitlet packed refs, sorted\n";
+
+    /** Prefix of every reference name. */
+    private static final String REFS = "refs/";
+
+    /** Contents of a loose file for a deleted reference. */
+    private static final String DELETED = "-";
+
+    /** The .gitlet directory. */
+    private final File _dir;
+}
@@ -0,0 +1,282 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Moves history between two .gitlet directories on the local
+ * filesystem. The sending side walks back from the commit that is
+ * wanted and stops wherever the receiving side already has the
+ * commit, so only the missing part of the graph is visited; the
+ * objects found are then shipped as a single pack.
+ * @author Max Miranda */
+class Remote {
+
+    /** Returns the .gitlet directory named by PATH, written with "/"
+     * as the separator, after checking that it exists. That of a
+     * linked working directory is replaced by the one it shares its
+     * objects and references with. */
+    static File locate(String path) {
+        File dir = new File(path.replace("/", File.separator));
+        if (!dir.isDirectory()) {
+            throw Utils.error("Remote directory not found.");
+        }
+        return Worktree.commonOf(dir);
+    }
+
+    /** Returns the repository stored in the .gitlet directory DIR. */
+    static Repo open(File dir) {
+        Repo repo = Utils.readObject(new File(dir, "myrepo"), Repo.class);
+        repo.setDirectory(dir);
+        return repo;
+    }
+
+    /** Writes REPO back as the repository of the .gitlet directory
+     * DIR. */
+    static void save(File dir, Repo repo) {
+        Utils.writeObject(new File(dir, "myrepo"), repo);
+    }
+
+    /** Copies every commit reachable from WANT in the .gitlet directory
+     * SRC, along with its blobs, into the .gitlet directory DEST,
+     * skipping whatever DEST already has. Returns the number of
+     * objects sent. */
+    static int transfer(File src, File dest, String want) {
+        return transfer(src, dest, want, new Options());
+    }
+
+    /** As for transfer(SRC, DEST, WANT), but limited as described by
+     * OPTS, which also receives the commits cut off by a depth limit
+     * and the blobs left behind. */
+    static int transfer(File src, File dest, String want, Options opts) {
+        List<String> commits = new ArrayList<String>();
+        Set<String> blobs = new LinkedHashSet<String>();
+        negotiate(src, dest, want, opts, commits, blobs);
+        if (commits.isEmpty() && blobs.isEmpty()) {
+            return 0;
+        }
+        return ship(src, dest, commits, blobs);
+    }
+
+    /** Copies the blobs with the given IDS that SRC has and DEST lacks
+     * into DEST. Returns the number of objects sent. */
+    static int transferBlobs(File src, File dest, Collection<String> ids) {
+        Set<String> blobs = new LinkedHashSet<String>();
+        for (String id : ids) {
+            if (has(src, "staging/", id) && !has(dest, "staging/", id)) {
+                blobs.add(id);
+            }
+        }
+        if (blobs.isEmpty()) {
+            return 0;
+        }
+        return ship(src, dest, new ArrayList<String>(), blobs);
+    }
+
+    /** Fills COMMITS and BLOBS with the ids of the objects reachable
+     * from WANT in SRC that are missing from DEST, within the limits
+     * of OPTS. A commit DEST has brings its whole history with it, so
+     * the walk does not go past one, unless DEST has it without its
+     * parents; nor does it go past a commit SRC has without its
+     * parents, which DEST then has without them too. The walk goes one
+     * generation at a time so that a depth limit cuts the graph
+     * evenly. */
+    private static void negotiate(File src, File dest, String want,
+                                  Options opts, List<String> commits,
+                                  Set<String> blobs) {
+        Set<String> seen = new HashSet<String>();
+        List<String> generation = new ArrayList<String>();
+        generation.add(want);
+        for (int depth = 1; !generation.isEmpty(); depth += 1) {
+            List<String> next = new ArrayList<String>();
+            for (String uid : generation) {
+                boolean had = has(dest, "commits/", uid);
+                if (!seen.add(uid) || !has(src, "commits/", uid)
+                    || had && !opts.destShallow.contains(uid)) {
+                    continue;
+                }
+                Commit comm = Utils.readObject(
+                    new File(src, "commits/" + uid), Commit.class);
+                if (!had) {
+                    commits.add(uid);
+                    collectBlobs(src, dest, comm, opts, blobs);
+                }
+                if (comm.getParents() == null) {
+                    continue;
+                }
+                if (depth == opts.depth
+                    || opts.sourceShallow.contains(uid)) {
+                    if (!had) {
+                        opts.shallow.add(uid);
+                    }
+                } else {
+                    if (had) {
+                        opts.deepened.add(uid);
+                    }
+                    next.addAll(Arrays.asList(comm.getParents()));
+                }
+            }
+            generation = next;
+        }
+    }
+
+    /** Adds to BLOBS the blobs of COMM that DEST lacks and SRC has,
+     * or records them in OPTS as promised if OPTS leaves blobs out. */
+    private static void collectBlobs(File src, File dest, Commit comm,
+                                     Options opts, Set<String> blobs) {
+        HashMap<String, String> files = comm.getFiles();
+        if (files == null) {
+            return;
+        }
+        for (String blob : files.values()) {
+            if (has(dest, "staging/", blob)) {
+                continue;
+            } else if (opts.blobs && has(src, "staging/", blob)) {
+                blobs.add(blob);
+            } else {
+                opts.promised.add(blob);
+            }
+        }
+    }
+
+    /** Streams a pack of COMMITS and BLOBS from SRC straight into
+     * DEST through a pipe, with the sending side on its own thread.
+     * Returns the number of objects sent. */
+    private static int ship(File src, File dest, List<String> commits,
+                            Set<String> blobs) {
+        AtomicReference<IOException> failure =
+            new AtomicReference<IOException>();
+        try (PipedInputStream in = new PipedInputStream(PIPE_SIZE)) {
+            PipedOutputStream out = new PipedOutputStream(in);
+            Thread sender = new Thread(() -> {
+                try (PipedOutputStream o = out) {
+                    Pack.write(o, src, commits, blobs);
+                } catch (IOException excp) {
+                    failure.set(excp);
+                }
+            }, "gitlet-pack");
+            sender.start();
+            int count = Pack.read(in, dest);
+            sender.join();
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return count;
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true iff the .gitlet directory DIR holds the object ID
+     * in its subdirectory KIND. */
+    private static boolean has(File dir, String kind, String id) {
+        return new File(dir, kind + id).exists();
+    }
+
+    /** Returns true iff ANCESTOR is ID or one of its ancestors in the
+     * .gitlet directory DIR. */
+    static boolean isAncestor(File dir, String ancestor, String id) {
+        Set<String> seen = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            String uid = queue.poll();
+            if (uid.equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(uid)) {
+                continue;
+            }
+            File f = new File(dir, "commits/" + uid);
+            if (!f.exists()) {
+                continue;
+            }
+            Commit comm = Utils.readObject(f, Commit.class);
+            if (comm.getParents() != null) {
+                for (String parent : comm.getParents()) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Limits on a transfer, and what those limits left behind. */
+    static class Options {
+        /** Number of generations to send, counting the wanted commit
+         * as the first, or -1 for all of them. */
+        private int depth = -1;
+
+        /** False if blobs are to be left behind. */
+        private boolean blobs = true;
+
+        /** Commits the sending side has without their parents. */
+        private Set<String> sourceShallow = new HashSet<String>();
+
+        /** Commits the receiving side has without their parents. */
+        private Set<String> destShallow = new HashSet<String>();
+
+        /** Commits sent without their parents. */
+        private final Set<String> shallow = new HashSet<String>();
+
+        /** Commits the receiving side had without their parents, whose
+         * parents were sent. */
+        private final Set<String> deepened = new HashSet<String>();
+
+        /** Blobs referenced by sent commits but not sent. */
+        private final Set<String> promised = new HashSet<String>();
+
+        /** Sets the depth limit to DEPTH and returns these options. */
+        Options depth(int depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        /** Sets whether to send blobs to BLOBS and returns these
+         * options. */
+        Options blobs(boolean blobs) {
+            this.blobs = blobs;
+            return this;
+        }
+
+        /** Notes that the sending side has the commits SOURCE, and the
+         * receiving side the commits DEST, without their parents, and
+         * returns these options. */
+        Options shallow(Set<String> source, Set<String> dest) {
+            this.sourceShallow = source;
+            this.destShallow = dest;
+            return this;
+        }
+
+        /** Returns the commits sent without their parents. */
+        Set<String> getShallow() {
+            return shallow;
+        }
+
+        /** Returns the commits the receiving side had without their
+         * parents, whose parents were sent. */
+        Set<String> getDeepened() {
+            return deepened;
+        }
+
+        /** Returns the blobs left behind. */
+        Set<String> getPromised() {
+            return promised;
+        }
+    }
+
+    /** Capacity of the pipe between the sending and receiving side. */
+    private static final int PIPE_SIZE = 1 << 16;
+}
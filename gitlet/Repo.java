@@ -1,10 +1,38 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** This effectively acts as my "Tree" class,
  * the Repo is the overseer of the entire .gitlet
@@ -21,25 +49,70 @@ public class Repo implements Serializable {
      * a single branch: master, which initially points to this initial
      * commit, and master will be the current branch. */
     public Repo() {
-        Commit initial = Commit.initialCommit();
-        File gitlet = new File(".gitlet");
-        gitlet.mkdir();
-        File commits = new File(".gitlet/commits");
-        commits.mkdir();
-        File staging = new File(".gitlet/staging");
-        staging.mkdir();
-
-        String id = initial.getUniversalID();
-        File initialFile = new File(".gitlet/commits/" + id);
-        Utils.writeContents(initialFile, Utils.serialize(initial));
+        this(Hashing.SHA1);
+    }
+
+    /** As for Repo(), but naming objects by their hashes under
+     * ALGORITHM, one of Hashing.SHA1 and Hashing.SHA256. */
+    public Repo(String algorithm) {
+        this(algorithm, null, null);
+    }
+
+    /** As for Repo(ALGORITHM), but keeping objects and references in
+     * STORE and working files in WORK rather than in the current
+     * directory, unless STORE is null. Such a repository leaves the
+     * algorithm of the process alone; commands run on it must be run
+     * under Hashing.using(ALGORITHM, ...), as Gitlet does. */
+    public Repo(String algorithm, ObjectStore store, WorkingTree work) {
+        _hashAlgorithm = algorithm;
+        if (store == null) {
+            Hashing.use(algorithm);
+        }
+        Commit initial = Hashing.using(algorithm, Commit::initialCommit);
+        if (store == null) {
+            File gitlet = new File(".gitlet");
+            gitlet.mkdir();
+            File commits = new File(".gitlet/commits");
+            commits.mkdir();
+            File staging = new File(".gitlet/staging");
+            staging.mkdir();
+        } else {
+            attach(store, work);
+        }
+
+        writeCommit(initial);
         _head = "master";
-        _branches = new HashMap<String, String>();
-        _branches.put("master", initial.getUniversalID());
+        refs().update(Refs.HEADS + "master", initial.getUniversalID());
 
         _stagingArea = new HashMap<String, String>();
         _untrackedFiles = new ArrayList<String>();
     }
 
+    /** The repository of a linked working directory, with BRANCH
+     * checked out and STAGED, which maps file names to blob ids, staged.
+     * What all working directories share is read from the repository
+     * they share each time this one is loaded. */
+    private Repo(String branch, HashMap<String, String> staged) {
+        _head = branch;
+        _stagingArea = staged;
+        _untrackedFiles = new ArrayList<String>();
+    }
+
+    /** A repository whose objects, references and working files are
+     * already in STORE and WORK, named by hashing with ALGORITHM, with
+     * the branch BRANCH checked out and nothing staged. */
+    Repo(String algorithm, ObjectStore store, WorkingTree work,
+         String branch) {
+        _hashAlgorithm = algorithm;
+        attach(store, work);
+        if (getBranch(branch) == null) {
+            throw Utils.error("No such branch exists.");
+        }
+        _head = branch;
+        _stagingArea = new HashMap<String, String>();
+        _untrackedFiles = new ArrayList<String>();
+    }
+
     /*********************** LOG ****************************/
 
     /** Description: Starting at the current head commit,
@@ -56,7 +129,27 @@ public class Repo implements Serializable {
         while (head != null) {
             Commit first = uidToCommit(head);
             printACommit(head);
-            head = first.getParentID();
+            head = isShallow(head) ? null : first.getParentID();
+        }
+    }
+
+    /** As for logCommits, but showing only the commits that changed
+     * the file PATH relative to their first parents. The commit graph
+     * supplies the parents, and rules out most commits that did not
+     * change PATH, without their being read. */
+    public void logPath(String path) {
+        CommitGraph graph = inPlace() ? CommitGraph.read()
+            : new CommitGraph();
+        String uid = getHead();
+        while (uid != null) {
+            if (graph.changed(this, uid, path)) {
+                printACommit(uid);
+            }
+            String[] parents = graph.parents(this, uid);
+            uid = isShallow(uid) || parents.length == 0 ? null : parents[0];
+        }
+        if (inPlace()) {
+            graph.write();
         }
     }
 
@@ -66,20 +159,20 @@ public class Repo implements Serializable {
     public void printACommit(String uid) {
         Commit comm = uidToCommit(uid);
         if (comm.getParents() != null && comm.getParents().length > 1) {
-            System.out.println("===");
-            System.out.println("commit " + uid);
+            Utils.out().println("===");
+            Utils.out().println("commit " + uid);
             String short1 = comm.getParents()[0].substring(0, 7);
             String short2 = comm.getParents()[1].substring(0, 7);
-            System.out.println("Merge: " + short1 + " " + short2);
-            System.out.println("Date: " + comm.getTimestamp());
-            System.out.println(comm.getMessage());
-            System.out.println();
+            Utils.out().println("Merge: " + short1 + " " + short2);
+            Utils.out().println("Date: " + comm.getTimestamp());
+            Utils.out().println(comm.getMessage());
+            Utils.out().println();
         } else {
-            System.out.println("===");
-            System.out.println("commit " + uid);
-            System.out.println("Date: " + comm.getTimestamp());
-            System.out.println(comm.getMessage());
-            System.out.println();
+            Utils.out().println("===");
+            Utils.out().println("commit " + uid);
+            Utils.out().println("Date: " + comm.getTimestamp());
+            Utils.out().println(comm.getMessage());
+            Utils.out().println();
         }
     }
 
@@ -87,40 +180,65 @@ public class Repo implements Serializable {
 
     /** Takes in a String S.  */
     public void add(String s) {
-        File f = new File(s);
-        if (!f.exists()) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
+        if (!work().exists(s)) {
+            throw Utils.error("File does not exist.");
         }
-        String fileHash = Utils.sha1(Utils.readContentsAsString(f));
+        String fileHash = blobOf(s);
         Commit mostRecent = uidToCommit(getHead());
         HashMap<String, String> files = mostRecent.getFiles();
 
-        File stagingBlob = new File(".gitlet/staging/" + fileHash);
         boolean b = files == null;
         if (b || !files.containsKey(s) || !files.get(s).equals(fileHash)) {
             _stagingArea.put(s, fileHash);
-            String contents = Utils.readContentsAsString(f);
-            Utils.writeContents(stagingBlob, contents);
         } else {
-            if (stagingBlob.exists()) {
-                _stagingArea.remove(s);
-            }
+            _stagingArea.remove(s);
         }
         if (_untrackedFiles.contains(s)) {
             _untrackedFiles.remove(s);
         }
     }
 
+    /** Returns the id of the blob holding the working file NAME,
+     * storing it first if need be. A file of at least lfs.threshold
+     * bytes is stored as a pointer blob, its contents going to the
+     * large-object store. A file the stat cache knows is not read. */
+    private String blobOf(String name) {
+        WorkingTree work = work();
+        long length = work.length(name);
+        String stat = length + ":" + work.lastModified(name) + ":";
+        String cached = _stat == null ? null : _stat.get(name);
+        if (cached != null && cached.startsWith(stat)) {
+            String id = cached.substring(stat.length());
+            if (store().has(ObjectStore.Kind.BLOB, id)) {
+                return id;
+            }
+        }
+        String id;
+        if (inPlace() && length >= largeFileThreshold()) {
+            id = Lfs.store(new File(name));
+        } else {
+            id = store().storeFile(work, name);
+        }
+        remember(name, id);
+        return id;
+    }
+
+    /** Returns the size in bytes from which files are stored in the
+     * large-object store. */
+    private long largeFileThreshold() {
+        String value = getConfig("lfs.threshold");
+        return value == null ? Long.MAX_VALUE : Long.parseLong(value);
+    }
+
     /*********************** COMMIT ****************************/
 
     /**
      *Takes in a String MSG.
      */
     public void commit(String msg) {
+        checkNotBisecting();
         if (msg.trim().equals("")) {
-            Utils.message("Please enter a commit message.");
-            throw new GitletException();
+            throw Utils.error("Please enter a commit message.");
         }
         Commit mostRecent = uidToCommit(getHead());
         HashMap<String, String> trackedFiles = mostRecent.getFiles();
@@ -137,27 +255,26 @@ public class Repo implements Serializable {
                 trackedFiles.remove(fileName);
             }
         } else {
-            Utils.message("No changes added to the commit.");
-            throw new GitletException();
+            throw Utils.error("No changes added to the commit.");
         }
         String[] parent = new String[]{mostRecent.getUniversalID()};
         Commit newCommit = new Commit(msg, trackedFiles, parent, true);
         String s = newCommit.getUniversalID();
-        File newCommFile = new File(".gitlet/commits/" + s);
-        Utils.writeObject(newCommFile, newCommit);
+        writeCommit(newCommit);
+        recordChanges(s, newCommit.getParents());
 
         _stagingArea = new HashMap<String, String>();
         _untrackedFiles = new ArrayList<String>();
-        _branches.put(_head, newCommit.getUniversalID());
+        setBranch(_head, newCommit.getUniversalID());
     }
 
     /** Exactly like the regular commit function, but
      * used for merge commits, takes in a String MSG, and
      * a set of PARENTS. */
     public void commit(String msg, String[] parents) {
+        checkNotBisecting();
         if (msg.trim().equals("")) {
-            Utils.message("Please enter a commit message.");
-            throw new GitletException();
+            throw Utils.error("Please enter a commit message.");
         }
         Commit mostRecent = uidToCommit(getHead());
         HashMap<String, String> trackedFiles = mostRecent.getFiles();
@@ -174,18 +291,28 @@ public class Repo implements Serializable {
                 trackedFiles.remove(fileName);
             }
         } else {
-            Utils.message("No changes added to the commit.");
-            throw new GitletException();
+            throw Utils.error("No changes added to the commit.");
         }
         Commit newCommit = new Commit(msg, trackedFiles, parents, true);
         String s = newCommit.getUniversalID();
-        File newCommFile = new File(".gitlet/commits/" + s);
-        Utils.writeObject(newCommFile, newCommit);
+        writeCommit(newCommit);
+        recordChanges(s, newCommit.getParents());
 
         _untrackedFiles = new ArrayList<String>();
         _stagingArea = new HashMap<String, String>();
-        _branches.put(_head, newCommit.getUniversalID());
+        setBranch(_head, newCommit.getUniversalID());
+    }
+
+    /** Enters the commit UID, with PARENTS, in the commit graph as
+     * changing the files staged for it. */
+    private void recordChanges(String uid, String[] parents) {
+        Set<String> changed = new HashSet<String>(_stagingArea.keySet());
+        changed.addAll(_untrackedFiles);
+        if (inPlace()) {
+            CommitGraph.record(uid, parents, changed);
+        }
     }
+
     /*********************** REMOVE ****************************/
 
     /** Unstage the file if it is currently staged. If the file is
@@ -197,12 +324,10 @@ public class Repo implements Serializable {
      ** Takes in a String ARG.
      * */
     public void rm(String arg) {
-        File file = new File(arg);
         Commit mostRecent = uidToCommit(getHead());
         HashMap<String, String> trackedFiles = mostRecent.getFiles();
-        if (!file.exists() && !trackedFiles.containsKey(arg)) {
-            Utils.message("File does not exist.");
-            throw new GitletException();
+        if (!work().exists(arg) && !trackedFiles.containsKey(arg)) {
+            throw Utils.error("File does not exist.");
         }
         boolean changed = false;
         if (_stagingArea.containsKey(arg)) {
@@ -211,13 +336,11 @@ public class Repo implements Serializable {
         }
         if (trackedFiles != null && trackedFiles.containsKey(arg)) {
             _untrackedFiles.add(arg);
-            File toRemove = new File(arg);
-            Utils.restrictedDelete(toRemove);
+            work().delete(arg);
             changed = true;
         }
         if (!changed) {
-            Utils.message("No reason to remove the file.");
-            throw new GitletException();
+            throw Utils.error("No reason to remove the file.");
         }
     }
 
@@ -225,11 +348,8 @@ public class Repo implements Serializable {
     /** Takes no arguments, simply prints out all of the commits
      * that have ever occurred. */
     public void globalLog() {
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
-
-        for (File file : commits) {
-            printACommit(file.getName());
+        for (String uid : store().list(ObjectStore.Kind.COMMIT)) {
+            printACommit(uid);
         }
     }
 
@@ -237,20 +357,17 @@ public class Repo implements Serializable {
 
     /** Takes in a MSG. */
     public void find(String msg) {
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
         boolean found = false;
 
-        for (File file : commits) {
-            Commit comm = uidToCommit(file.getName());
+        for (String uid : store().list(ObjectStore.Kind.COMMIT)) {
+            Commit comm = uidToCommit(uid);
             if (comm.getMessage().equals(msg)) {
-                System.out.println(file.getName());
+                Utils.out().println(uid);
                 found = true;
             }
         }
         if (!found) {
-            Utils.message("Found no commit with that message.");
-            throw new GitletException();
+            throw Utils.error("Found no commit with that message.");
         }
     }
 
@@ -258,35 +375,160 @@ public class Repo implements Serializable {
 
     /** This will print out the status of a repository. */
     public void status() {
-        System.out.println("=== Branches ===");
-        Object[] keys = _branches.keySet().toArray();
-        Arrays.sort(keys);
-        for (Object branch : keys) {
-            if (branch.equals(_head)) {
-                System.out.println("*" + branch);
+        getStatus().print(Utils.out());
+    }
+
+    /** Returns the status of the working directory. */
+    public Status getStatus() {
+        List<String> modified = new ArrayList<String>();
+        List<String> deleted = new ArrayList<String>();
+        List<String> untracked = new ArrayList<String>();
+        scanWorkingTree(modified, deleted, untracked);
+        return new Status(_head, refs().list(Refs.HEADS).keySet(),
+                          _stagingArea.keySet(), _untrackedFiles, modified,
+                          deleted, untracked);
+    }
+
+    /** Fills MODIFIED and DELETED with the working files changed or
+     * deleted whose changes are not staged, and UNTRACKED with the
+     * files that are neither staged nor tracked, each in name order.
+     * With a sparse checkout, tracked files outside it are ignored
+     * unless staged. With a watcher running only the paths it reports dirty,
+     * plus the staged ones, are looked at; those found clean are handed
+     * back to it so they are not looked at again. */
+    private void scanWorkingTree(List<String> modified,
+                                 List<String> deleted,
+                                 List<String> untracked) {
+        HashMap<String, String> tracked = uidToCommit(getHead()).getFiles();
+        if (tracked == null) {
+            tracked = new HashMap<String, String>();
+        }
+        List<String> dirty = inPlace() ? Watcher.dirtyPaths() : null;
+        TreeSet<String> candidates = new TreeSet<String>();
+        if (dirty == null) {
+            candidates.addAll(workingFiles());
+            candidates.addAll(sparseNames(tracked.keySet()));
+        } else {
+            candidates.addAll(dirty);
+        }
+        if (_sparse != null) {
+            Set<String> skipped = tracked.keySet();
+            candidates.removeIf(name -> skipped.contains(name)
+                                && !inSparse(name));
+        }
+        candidates.addAll(_stagingArea.keySet());
+        List<String> clean = new ArrayList<String>();
+        for (String name : candidates) {
+            boolean exists = work().exists(name);
+            String blob = _stagingArea.get(name);
+            if (blob == null && !_untrackedFiles.contains(name)) {
+                blob = tracked.get(name);
+            }
+            if (blob == null) {
+                if (exists) {
+                    untracked.add(name);
+                } else {
+                    clean.add(name);
+                }
+            } else if (!exists) {
+                deleted.add(name);
+            } else if (!unmodified(name, blob)) {
+                modified.add(name);
             } else {
-                System.out.println(branch);
+                clean.add(name);
+            }
+        }
+        if (dirty != null) {
+            clean.retainAll(dirty);
+            Watcher.acknowledge(clean);
+        }
+    }
+
+    /** Writes the working files named in FILES, which maps file
+     * names to blob ids, in the way chosen by the checkout.mode
+     * setting, fetching any promised blobs first. With a sparse
+     * checkout, files outside it are neither fetched nor written. */
+    private void materialize(Map<String, String> files) {
+        if (files == null) {
+            return;
+        }
+        Map<String, String> wanted = sparse(files);
+        if (!inPlace()) {
+            for (Map.Entry<String, String> e : wanted.entrySet()) {
+                work().write(e.getKey(), readBlob(e.getValue()));
+            }
+            return;
+        }
+        fetchPromised(wanted.values());
+        fetchLarge(wanted.values());
+        Materializer.materialize(wanted, getConfig("checkout.mode"));
+    }
+
+    /** Returns the names of the plain files in the working directory,
+     * or, with a watcher running, of just those that may have changed
+     * since they were last seen clean. */
+    private List<String> candidateFiles() {
+        List<String> dirty = inPlace() ? Watcher.dirtyPaths() : null;
+        if (dirty == null) {
+            return workingFiles();
+        }
+        List<String> result = new ArrayList<String>();
+        for (String name : dirty) {
+            if (work().exists(name)) {
+                result.add(name);
             }
         }
-        System.out.println();
-        System.out.println("=== Staged Files ===");
-        Object[] stages = _stagingArea.keySet().toArray();
-        Arrays.sort(stages);
-        for (Object staged : stages) {
-            System.out.println(staged);
+        return result;
+    }
+
+    /** Returns the names of all plain files in the working directory. */
+    private List<String> workingFiles() {
+        return work().files();
+    }
+
+    /** Returns true iff the working file NAME holds the contents of the
+     * blob BLOB. The answer comes from the stat cache when the file's
+     * size and modification time are those recorded for BLOB;
+     * otherwise the file is hashed and the cache updated. */
+    private boolean unmodified(String name, String blob) {
+        String stat = work().length(name) + ":" + work().lastModified(name)
+            + ":";
+        if (_stat == null) {
+            _stat = new HashMap<String, String>();
+        }
+        if ((stat + blob).equals(_stat.get(name))) {
+            return true;
+        }
+        String actual = inPlace() ? idAs(new File(name), blob)
+            : work().hash(name);
+        remember(name, actual);
+        return actual.equals(blob);
+    }
+
+    /** Returns the id the working file F would have if stored as BLOB
+     * was: as a pointer if BLOB is one, and as a plain blob otherwise.
+     * Only F is read; large contents in the store never are. */
+    private static String idAs(File f, String blob) {
+        String oid = Lfs.oidOf(blob);
+        String contents = Hashing.hashFile(f);
+        return oid == null ? contents : Lfs.pointerId(contents, f.length());
+    }
+
+    /** Records in the stat cache that the working file NAME holds the
+     * blob BLOB. A file modified within the last RACY_WINDOW
+     * milliseconds is not cached, since a further change within the
+     * same clock tick would go unnoticed. */
+    private void remember(String name, String blob) {
+        long modified = work().lastModified(name);
+        if (_stat == null) {
+            _stat = new HashMap<String, String>();
         }
-        System.out.println();
-        System.out.println("=== Removed Files ===");
-        Object[] untracks = _untrackedFiles.toArray();
-        Arrays.sort(untracks);
-        for (Object removed : untracks) {
-            System.out.println(removed);
+        if (System.currentTimeMillis() - modified < RACY_WINDOW) {
+            _stat.remove(name);
+        } else {
+            _stat.put(name, work().length(name) + ":" + modified + ":"
+                      + blob);
         }
-        System.out.println();
-        System.out.println("=== Modifications Not Staged For Commit ===");
-        System.out.println();
-        System.out.println("=== Untracked Files ===");
-        System.out.println();
     }
 
     /*********************** CHECKOUT ****************************/
@@ -303,108 +545,131 @@ public class Repo implements Serializable {
             commID = args[0];
             fileName = args[2];
         } else {
-            Utils.message("Incorrect operands");
-            throw new GitletException();
+            throw Utils.error("Incorrect operands");
         }
         commID = convertShortenedID(commID);
         Commit comm = uidToCommit(commID);
         HashMap<String, String> trackedFiles = comm.getFiles();
         if (trackedFiles.containsKey(fileName)) {
-            File f = new File(fileName);
-            String p = ".gitlet/staging/";
-            String blobFileName = p + trackedFiles.get(fileName);
-            File g = new File(blobFileName);
-            String contents = Utils.readContentsAsString(g);
-            Utils.writeContents(f, contents);
+            String blob = trackedFiles.get(fileName);
+            if (!inPlace()) {
+                work().write(fileName, readBlob(blob));
+                return;
+            }
+            fetchPromised(Arrays.asList(blob));
+            fetchLarge(Arrays.asList(blob));
+            Materializer.materialize(Collections.singletonMap(fileName, blob),
+                                     getConfig("checkout.mode"));
         } else {
-            Utils.message("File does not exist in that commit.");
-            throw new GitletException();
+            throw Utils.error("File does not exist in that commit.");
         }
     }
 
     /** Takes in a shortened String ID and returns a String
      * of the full length ID. */
     private String convertShortenedID(String id) {
-        if (id.length() == Utils.UID_LENGTH) {
+        if (id.length() == Hashing.idLength()) {
             return id;
         }
-        File commitFolder = new File(".gitlet/commits");
-        File[] commits = commitFolder.listFiles();
-
-        for (File file : commits) {
-            if (file.getName().contains(id)) {
-                return file.getName();
+        String tagged = refs().resolve(Refs.TAGS + id);
+        if (tagged != null) {
+            return peel(tagged);
+        }
+        for (String uid : store().list(ObjectStore.Kind.COMMIT)) {
+            if (uid.contains(id)) {
+                return uid;
             }
         }
-        Utils.message("No commit with that id exists.");
-        throw new GitletException();
+        throw Utils.error("No commit with that id exists.");
     }
 
     /** This is the third use case for checkout.
      * It takes in a BRANCHNAME. */
     public void checkout(String branchName) {
-        if (!_branches.containsKey(branchName)) {
-            Utils.message("No such branch exists.");
-            throw new GitletException();
+        checkNotBisecting();
+        if (getBranch(branchName) == null) {
+            throw Utils.error("No such branch exists.");
         }
         if (_head.equals(branchName)) {
             String s = "No need to checkout the current branch.";
-            Utils.message(s);
-            throw new GitletException();
+            throw Utils.error(s);
         }
-        String commID = _branches.get(branchName);
+        checkNotCheckedOut(branchName);
+        String commID = getBranch(branchName);
         Commit comm = uidToCommit(commID);
         HashMap<String, String> files = comm.getFiles();
-        String pwdString = System.getProperty("user.dir");
-        File pwd = new File(pwdString);
-        checkForUntracked(pwd);
-        for (File file : pwd.listFiles()) {
-            if (files == null) {
-                Utils.restrictedDelete(file);
-            } else {
-                boolean b = !files.containsKey(file.getName());
-                if (b && !file.getName().equals(".gitlet")) {
-                    Utils.restrictedDelete(file);
-                }
-            }
-        }
-        if (files != null) {
-            for (String file : files.keySet()) {
-                String g = ".gitlet/staging/" + files.get(file);
-                File f = new File(g);
-                String contents = Utils.readContentsAsString(f);
-                Utils.writeContents(new File(file), contents);
-            }
-        }
+        checkForUntracked();
+        checkoutFiles(files);
         _stagingArea = new HashMap<String, String>();
         _untrackedFiles = new ArrayList<String>();
         _head = branchName;
 
     }
 
-    /** This function takes in the present working directory
-     * PWD and will determine if there are untracked files
-     * that mean that this checkout or Merge operation can't
-     * continue. */
-    private void checkForUntracked(File pwd) {
+    /** Replaces the working files of the head commit and staging area
+     * by FILES, which maps file names to blob ids and may be null, for
+     * none. Looks only at the files tracked or staged, those in FILES
+     * and those the watcher reports dirty; writes only those that
+     * differ from FILES, deciding from the blob ids alone unless the
+     * file has changed since it was last seen clean. */
+    private void checkoutFiles(Map<String, String> files) {
+        if (files == null) {
+            files = new HashMap<String, String>();
+        }
+        Map<String, String> old = new HashMap<String, String>();
+        HashMap<String, String> head = uidToCommit(getHead()).getFiles();
+        if (head != null) {
+            old.putAll(head);
+        }
+        old.putAll(_stagingArea);
+        List<String> dirtyPaths = inPlace() ? Watcher.dirtyPaths() : null;
+        Set<String> dirty = dirtyPaths == null ? null
+            : new HashSet<String>(dirtyPaths);
+        Set<String> names = new TreeSet<String>(old.keySet());
+        names.addAll(files.keySet());
+        if (dirty != null) {
+            names.addAll(dirty);
+        }
+        Map<String, String> changed = new HashMap<String, String>();
+        for (String name : names) {
+            if (!inSparse(name)) {
+                continue;
+            }
+            String blob = files.get(name);
+            String was = _untrackedFiles.contains(name) ? null
+                : old.get(name);
+            boolean exists = work().exists(name);
+            if (blob == null) {
+                if (exists) {
+                    work().delete(name);
+                }
+            } else if (!blob.equals(was) || !exists
+                       || (dirty != null ? dirty.contains(name)
+                           : !unmodified(name, was))) {
+                changed.put(name, blob);
+            }
+        }
+        materialize(changed);
+    }
+
+    /** This function will determine if there are untracked files
+     * in the present working directory that mean that this checkout
+     * or Merge operation can't continue. */
+    private void checkForUntracked() {
         String s;
         s = "There is an untracked file in the way; ";
         s += "delete it or add it first.";
         Commit mostRecent = uidToCommit(getHead());
         HashMap<String, String> trackedFiles = mostRecent.getFiles();
-        for (File file : pwd.listFiles()) {
-            if (trackedFiles == null) {
-                if (pwd.listFiles().length > 1) {
-                    Utils.message(s);
-                    throw new GitletException();
-                }
-            } else {
-                boolean b = !trackedFiles.containsKey(file.getName());
-                boolean c = !_stagingArea.containsKey(file.getName());
-                if (b && !file.getName().equals(".gitlet") && c) {
-                    Utils.message(s);
-                    throw new GitletException();
-                }
+        for (String name : candidateFiles()) {
+            if (!inSparse(name)) {
+                continue;
+            }
+            boolean b = trackedFiles == null
+                || !trackedFiles.containsKey(name);
+            boolean c = !_stagingArea.containsKey(name);
+            if (b && c) {
+                throw Utils.error(s);
             }
         }
     }
@@ -416,11 +681,76 @@ public class Repo implements Serializable {
      * of that name.
      */
     public void branch(String arg) {
-        if (!_branches.containsKey(arg)) {
-            _branches.put(arg, getHead());
+        if (getBranch(arg) == null) {
+            setBranch(arg, getHead());
+        } else {
+            throw Utils.error("A branch with that name already exists.");
+        }
+    }
+
+    /*********************** TAG *****************/
+
+    /** Creates, deletes or lists tags. Takes in ARGS, which are one of
+     * <name> [<commit>], for a lightweight tag on the given commit or
+     * the head; -a <name> -m <message> [<commit>], for an annotated
+     * one; -d <name>; or, to list tags, nothing, or -l or -n followed
+     * by an optional prefix, -n showing each tag's message. */
+    public void tag(String[] args) {
+        if (args.length == 0 || args[0].equals("-l")
+            || args[0].equals("-n")) {
+            if (args.length > 2) {
+                throw Utils.error("Incorrect operands.");
+            }
+            String prefix = args.length == 2 ? args[1] : "";
+            boolean messages = args.length > 0 && args[0].equals("-n");
+            listTags(prefix, messages);
+        } else if (args[0].equals("-d") && args.length == 2) {
+            if (refs().resolve(Refs.TAGS + args[1]) == null) {
+                throw Utils.error("A tag with that name does not exist.");
+            }
+            refs().delete(Refs.TAGS + args[1]);
+        } else if (args[0].equals("-a") && (args.length == 4
+                                            || args.length == 5)
+                   && args[2].equals("-m")) {
+            if (!inPlace()) {
+                throw Utils.error(ON_DISK);
+            }
+            String target = args.length == 5 ? convertShortenedID(args[4])
+                : getHead();
+            checkNewTag(args[1]);
+            Tag tag = new Tag(args[1], target, args[3]);
+            refs().update(Refs.TAGS + args[1], tag.write(gitletDir()));
+        } else if (!args[0].startsWith("-") && args.length <= 2) {
+            String target = args.length == 2 ? convertShortenedID(args[1])
+                : getHead();
+            checkNewTag(args[0]);
+            refs().update(Refs.TAGS + args[0], target);
         } else {
-            Utils.message("A branch with that name already exists.");
-            throw new GitletException();
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Checks that no tag is called NAME. */
+    private void checkNewTag(String name) {
+        if (refs().resolve(Refs.TAGS + name) != null) {
+            throw Utils.error("A tag with that name already exists.");
+        }
+    }
+
+    /** Prints the names of the tags starting with PREFIX, in order,
+     * each followed by its message if MESSAGES: that of an annotated
+     * tag, or else that of the tagged commit. */
+    private void listTags(String prefix, boolean messages) {
+        for (Map.Entry<String, String> e
+                 : refs().list(Refs.TAGS + prefix).entrySet()) {
+            if (!messages) {
+                Utils.out().println(e.getKey());
+                continue;
+            }
+            Tag tag = inPlace() ? Tag.read(gitletDir(), e.getValue()) : null;
+            String message = tag != null ? tag.getMessage()
+                : uidToCommit(e.getValue()).getMessage();
+            Utils.out().println(e.getKey() + "\t" + message);
         }
     }
 
@@ -430,14 +760,13 @@ public class Repo implements Serializable {
      *  */
     public void rmBranch(String arg) {
         if (_head.equals(arg)) {
-            Utils.message("Cannot remove the current branch.");
-            throw new GitletException();
+            throw Utils.error("Cannot remove the current branch.");
         }
-        if (_branches.containsKey(arg)) {
-            _branches.remove(arg);
+        if (getBranch(arg) != null) {
+            checkNotCheckedOut(arg);
+            refs().delete(Refs.HEADS + arg);
         } else {
-            Utils.message("A branch with that name does not exist.");
-            throw new GitletException();
+            throw Utils.error("A branch with that name does not exist.");
         }
     }
 
@@ -454,26 +783,15 @@ public class Repo implements Serializable {
      * Takes in a String COMMID.
      */
     public void reset(String commID) {
+        checkNotBisecting();
         commID = convertShortenedID(commID);
         Commit comm = uidToCommit(commID);
         HashMap<String, String> files = comm.getFiles();
 
-        String pwdString = System.getProperty("user.dir");
-        File pwd = new File(pwdString);
-        checkForUntracked(pwd);
-
-        for (File file : pwd.listFiles()) {
-            if (!files.containsKey(file.getName())) {
-                Utils.restrictedDelete(file);
-            }
-        }
-        for (String file : files.keySet()) {
-            File f = new File(".gitlet/staging/" + files.get(file));
-            String contents = Utils.readContentsAsString(f);
-            Utils.writeContents(new File(file), contents);
-        }
+        checkForUntracked();
+        checkoutFiles(files);
         _stagingArea = new HashMap<String, String>();
-        _branches.put(_head, commID);
+        setBranch(_head, commID);
     }
 
     /*********************** MERGE ****************************/
@@ -485,158 +803,176 @@ public class Repo implements Serializable {
      * first. and exit; perform this check before doing anything else.
      * Takes in a string BRANCHNAME. */
     public void merge(String branchName) {
+        checkNotBisecting();
         if (_stagingArea.size() != 0 || _untrackedFiles.size() != 0) {
-            Utils.message("You have uncommitted changes.");
-            throw new GitletException();
+            throw Utils.error("You have uncommitted changes.");
         }
-        if (!_branches.containsKey(branchName)) {
-            Utils.message("A branch with that name does not exist.");
-            throw new GitletException();
+        if (getBranch(branchName) == null) {
+            throw Utils.error("A branch with that name does not exist.");
         }
         if (branchName.equals(_head)) {
-            Utils.message("Cannot merge a branch with itself.");
-            throw new GitletException();
+            throw Utils.error("Cannot merge a branch with itself.");
         }
         String split = splitPoint(branchName, _head);
-        if (split.equals(_branches.get(branchName))) {
+        if (split.equals(getBranch(branchName))) {
             Utils.message("Given branch is an ancestor of the current branch.");
             return;
         }
-        if (split.equals(_branches.get(_head))) {
-            _branches.put(_head, _branches.get(branchName));
+        if (split.equals(getBranch(_head))) {
+            reset(getBranch(branchName));
             Utils.message("Current branch fast-forwarded.");
             return;
         }
 
-        Commit splitCommit = uidToCommit(split);
-        HashMap<String, String> splitFiles = splitCommit.getFiles();
-
-        middleMerge(branchName);
-
-        Commit currComm = uidToCommit(getHead());
-        HashMap<String, String> current = currComm.getFiles();
-        Commit givenComm = uidToCommit(_branches.get(branchName));
-        HashMap<String, String> given = givenComm.getFiles();
-
-
-        for (String fileName : given.keySet()) {
-            if (!splitFiles.containsKey(fileName)) {
-                if (!current.containsKey(fileName)) {
-                    String b = _branches.get(branchName);
-                    checkout(new String[] {b, "--", fileName});
-                    _stagingArea.put(fileName, given.get(fileName));
-                } else if (!given.containsKey(fileName)) {
-                    continue;
-                } else if (mo(fileName, given, current)) {
-                    String p = ".gitlet/staging/";
-                    File c = new File(p + current.get(fileName));
-                    File g = new File(p + given.get(fileName));
-                    String contents = "<<<<<<< HEAD\n";
-                    contents += Utils.readContentsAsString(c);
-                    contents += "=======\n";
-                    contents += Utils.readContentsAsString(g) + ">>>>>>>";
-                    Utils.writeContents(new File(fileName), contents);
-                    add(fileName);
-                    Utils.message("Encountered a merge conflict.");
-                }
+        checkForUntracked();
+        HashMap<String, String> current = treeOf(getHead());
+        HashMap<String, String> given = treeOf(getBranch(branchName));
+        TreeSet<String> conflicts = new TreeSet<String>();
+        HashMap<String, String> merged =
+            mergeTrees(treeOf(split), current, given, conflicts);
+
+        HashMap<String, String> incoming = new HashMap<String, String>();
+        for (String fileName : current.keySet()) {
+            if (!merged.containsKey(fileName)) {
+                work().delete(fileName);
+                rm(fileName);
+            }
+        }
+        for (Map.Entry<String, String> e : merged.entrySet()) {
+            String fileName = e.getKey();
+            if (!conflicts.contains(fileName)
+                && !e.getValue().equals(current.get(fileName))) {
+                incoming.put(fileName, e.getValue());
+                _stagingArea.put(fileName, e.getValue());
             }
         }
-        String[] parents = new String[]{getHead(), _branches.get(branchName)};
+        for (String fileName : conflicts) {
+            mergeConflict(fileName, current.get(fileName),
+                          given.get(fileName));
+        }
+        materialize(incoming);
+        String[] parents = new String[]{getHead(), getBranch(branchName)};
         commit("Merged " + branchName + " into " + _head + ".", parents);
     }
 
-    /** Splitting up the merge. Need a BRANCHNAME. */
-    private void middleMerge(String branchName) {
-        String split = splitPoint(branchName, _head);
-        Commit splitCommit = uidToCommit(split);
-        HashMap<String, String> splitFiles = splitCommit.getFiles();
-        Commit currComm = uidToCommit(getHead());
-        HashMap<String, String> current = currComm.getFiles();
-        Commit givenComm = uidToCommit(_branches.get(branchName));
-        HashMap<String, String> given = givenComm.getFiles();
-
-        String pwdString = System.getProperty("user.dir");
-        File pwd = new File(pwdString);
-        checkForUntracked(pwd);
-
-        for (String fileName : splitFiles.keySet()) {
-            boolean presentInGiven = given.containsKey(fileName);
-            boolean modifiedInCurrent = mo(fileName, splitFiles, current);
-            boolean modifiedInGiven = mo(fileName, splitFiles, given);
-            if (!modifiedInCurrent) {
-                if (!presentInGiven) {
-                    Utils.restrictedDelete(new File(fileName));
-                    rm(fileName);
-                    continue;
-                }
-                if (modifiedInGiven) {
-                    String b = _branches.get(branchName);
-                    checkout(new String[]{b, "--", fileName});
-                    add(fileName);
-                }
-            }
-            if (modifiedInCurrent && modifiedInGiven) {
-                if (mo(fileName, given, current)) {
-                    mergeConflict(branchName, fileName);
+    /** Returns the three-way merge of the trees OURS and THEIRS, which
+     * both descend from the tree BASE; each maps file names to blob ids.
+     * A file changed on only one side takes that side's version,
+     * including its absence if that side deleted it. A file changed
+     * differently on both sides is added to CONFLICTS and keeps our
+     * version in the result. */
+    static HashMap<String, String> mergeTrees(Map<String, String> base,
+                                              Map<String, String> ours,
+                                              Map<String, String> theirs,
+                                              Set<String> conflicts) {
+        HashMap<String, String> result = new HashMap<String, String>(ours);
+        Set<String> names = new HashSet<String>(base.keySet());
+        names.addAll(theirs.keySet());
+        for (String name : names) {
+            String b = base.get(name);
+            String o = ours.get(name);
+            String t = theirs.get(name);
+            if (Objects.equals(b, t) || Objects.equals(o, t)) {
+                continue;
+            } else if (Objects.equals(b, o)) {
+                if (t == null) {
+                    result.remove(name);
+                } else {
+                    result.put(name, t);
                 }
+            } else {
+                conflicts.add(name);
             }
         }
+        return result;
     }
 
-    /** This has a BRANCHNAME and a FILENAME. */
-    private void mergeConflict(String branchName, String fileName) {
-        String split = splitPoint(branchName, _head);
-        Commit splitCommit = uidToCommit(split);
-        HashMap<String, String> splitFiles = splitCommit.getFiles();
-        Commit currComm = uidToCommit(getHead());
-        HashMap<String, String> current = currComm.getFiles();
-        Commit givenComm = uidToCommit(_branches.get(branchName));
-        HashMap<String, String> given = givenComm.getFiles();
-        String p = ".gitlet/staging/";
-        File c;
-        String cContents;
-        if (current.containsKey(fileName)) {
-            c = new File(p + current.get(fileName));
-            cContents = Utils.readContentsAsString(c);
-        } else {
-            c = null;
-            cContents = "";
-        }
-        File g;
-        String gContents;
-        if (given.containsKey(fileName)) {
-            g = new File(p + given.get(fileName));
-            gContents = Utils.readContentsAsString(g);
-        } else {
-            g = null;
-            gContents = "";
-        }
-        String contents = "<<<<<<< HEAD\n";
-        contents += cContents;
-        contents += "=======\n" + gContents;
-        contents += ">>>>>>>\n";
-        Utils.writeContents(new File(fileName), contents);
+    /** Replaces the working file FILENAME by one showing the conflict
+     * between the blobs CURRENT and GIVEN, either of which may be null
+     * for a deleted file, and stages it. Both blobs are memory-mapped
+     * and written out with the markers in one gathering write, so no
+     * copy of either is made on the heap. A blob that points to a large
+     * object contributes the large object's contents, fetched first if
+     * need be. */
+    private void mergeConflict(String fileName, String current,
+                               String given) {
+        fetchPromised(Arrays.asList(current, given));
+        fetchLarge(Arrays.asList(current, given));
+        if (!inPlace()) {
+            work().write(fileName, conflict(current, given));
+            add(fileName);
+            Utils.message("Encountered a merge conflict.");
+            return;
+        }
+        File out = ((FileWorkingTree) work()).file(fileName);
+        out.delete();
+        try (FileChannel dest = FileChannel.open(out.toPath(),
+                 StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer[] parts = new ByteBuffer[] {
+                marker("<<<<<<< HEAD\n"), mapBlob(current),
+                marker("=======\n"), mapBlob(given), marker(">>>>>>>\n"),
+            };
+            long left = 0;
+            for (ByteBuffer part : parts) {
+                left += part.remaining();
+            }
+            while (left > 0) {
+                left -= dest.write(parts);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
         add(fileName);
         Utils.message("Encountered a merge conflict.");
     }
+
+    /** Returns the contents of the blob ID, or of the large object it
+     * points to, mapped read-only, or an empty buffer if ID is null. */
+    private static ByteBuffer mapBlob(String id) throws IOException {
+        if (id == null) {
+            return ByteBuffer.allocate(0);
+        }
+        File blob = Lfs.content(id);
+        try (FileChannel in = FileChannel.open(blob.toPath())) {
+            return in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+    }
+
+    /** Returns the contents of a file showing the conflict between the
+     * blobs CURRENT and GIVEN, either of which may be null. */
+    private byte[] conflict(String current, String given) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(marker("<<<<<<< HEAD\n").array());
+        out.writeBytes(current == null ? new byte[0] : readBlob(current));
+        out.writeBytes(marker("=======\n").array());
+        out.writeBytes(given == null ? new byte[0] : readBlob(given));
+        out.writeBytes(marker(">>>>>>>\n").array());
+        return out.toByteArray();
+    }
+
+    /** Returns a buffer holding the conflict marker S. */
+    private static ByteBuffer marker(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+    }
+
     /** Takes in two branch names, BRANCH1 and BRANCH2. Returns the
      * SHA ID of the common ancestor commit. */
     private String splitPoint(String branch1, String branch2) {
         ArrayList<String> branch1Commits = new ArrayList<String>();
         ArrayList<String> branch2Commits = new ArrayList<String>();
 
-        String parent1 = _branches.get(branch1);
-        String parent2 = _branches.get(branch2);
+        String parent1 = getBranch(branch1);
+        String parent2 = getBranch(branch2);
 
         while (parent1 != null) {
             branch1Commits.add(parent1);
             Commit comm1 = uidToCommit(parent1);
-            parent1 = comm1.getParentID();
+            parent1 = isShallow(parent1) ? null : comm1.getParentID();
         }
         while (parent2 != null) {
             branch2Commits.add(parent2);
             Commit comm2 = uidToCommit(parent2);
-            parent2 = comm2.getParentID();
+            parent2 = isShallow(parent2) ? null : comm2.getParentID();
         }
         for (String commit : branch1Commits) {
             if (branch2Commits.contains(commit)) {
@@ -646,73 +982,1704 @@ public class Repo implements Serializable {
         return "";
     }
 
-    /** Returns a boolean if the file with name F has been modified from
-     * branch H to branch I. */
-    boolean mo(String f, HashMap<String, String> h, HashMap<String, String> i) {
-        if (h.containsKey(f) && i.containsKey(f)) {
-            String hashF1 = h.get(f);
-            String hashF2 = i.get(f);
-            if (!hashF1.equals(hashF2)) {
-                return true;
+    /*********************** REPLAY ****************************/
+
+    /** Applies the changes made by the commit ID on top of the current
+     * head. Without conflicts the result is committed with the message
+     * of ID; otherwise the merged files, with conflicts marked, are
+     * staged for the user to commit. */
+    public void cherryPick(String id) {
+        checkNotBisecting();
+        checkNoChanges();
+        String uid = convertShortenedID(id);
+        Commit pick = uidToCommit(uid);
+        if (pick.getParents() == null) {
+            throw Utils.error("Cannot cherry-pick the initial commit.");
+        }
+        HashMap<String, String> current = treeOf(getHead());
+        TreeSet<String> conflicts = new TreeSet<String>();
+        HashMap<String, String> merged = mergeTrees(
+            treeOf(pick.getParentID()), current, treeOf(uid), conflicts);
+        if (conflicts.isEmpty() && merged.equals(current)) {
+            throw Utils.error("No changes added to the commit.");
+        }
+        switchTree(current, merged);
+        if (conflicts.isEmpty()) {
+            Commit made = new Commit(pick.getMessage(), merged,
+                                     new String[] {getHead()}, true);
+            writeCommit(made);
+            setBranch(_head, made.getUniversalID());
+            return;
+        }
+        for (Map.Entry<String, String> e : merged.entrySet()) {
+            if (!e.getValue().equals(current.get(e.getKey()))) {
+                _stagingArea.put(e.getKey(), e.getValue());
+            }
+        }
+        for (String fileName : current.keySet()) {
+            if (!merged.containsKey(fileName)) {
+                _untrackedFiles.add(fileName);
+            }
+        }
+        HashMap<String, String> picked = treeOf(uid);
+        for (String fileName : conflicts) {
+            mergeConflict(fileName, current.get(fileName),
+                          picked.get(fileName));
+        }
+    }
+
+    /** Replays the commits of the current branch since it split from
+     * the branch BRANCHNAME on top of that branch's head, and moves the
+     * current branch to the result. Each commit's changes against its
+     * first parent are merged into the tree built so far entirely in
+     * memory; commits whose changes are already present are dropped.
+     * The new commits are stored and the working directory updated
+     * only once every commit has replayed cleanly, so a conflict
+     * leaves everything as it was. */
+    public void rebase(String branchName) {
+        checkNotBisecting();
+        checkNoChanges();
+        if (getBranch(branchName) == null) {
+            throw Utils.error("A branch with that name does not exist.");
+        }
+        if (branchName.equals(_head)) {
+            throw Utils.error("Cannot rebase a branch onto itself.");
+        }
+        String upstream = getBranch(branchName);
+        String split = splitPoint(branchName, _head);
+        if (split.equals(upstream)) {
+            Utils.message("Current branch is up to date.");
+            return;
+        }
+        if (split.equals(getHead())) {
+            reset(upstream);
+            Utils.message("Current branch fast-forwarded.");
+            return;
+        }
+        ArrayList<String> todo = new ArrayList<String>();
+        for (String uid = getHead(); uid != null && !uid.equals(split);
+             uid = isShallow(uid) ? null : uidToCommit(uid).getParentID()) {
+            todo.add(uid);
+        }
+        Collections.reverse(todo);
+        HashMap<String, String> tree = treeOf(upstream);
+        HashMap<String, String> before = treeOf(split);
+        String tip = upstream;
+        ArrayList<Commit> made = new ArrayList<Commit>();
+        for (String uid : todo) {
+            Commit comm = uidToCommit(uid);
+            HashMap<String, String> after = treeOf(uid);
+            TreeSet<String> conflicts = new TreeSet<String>();
+            HashMap<String, String> merged =
+                mergeTrees(before, tree, after, conflicts);
+            if (!conflicts.isEmpty()) {
+                throw Utils.error("Could not apply %s (conflict in %s); rebase "
+                              + "aborted.", uid.substring(0, 7),
+                              conflicts.first());
+            }
+            before = after;
+            if (merged.equals(tree)) {
+                continue;
+            }
+            Commit replayed = new Commit(comm.getMessage(), merged,
+                                         new String[] {tip}, true);
+            made.add(replayed);
+            tip = replayed.getUniversalID();
+            tree = merged;
+        }
+        switchTree(treeOf(getHead()), tree);
+        for (Commit replayed : made) {
+            writeCommit(replayed);
+        }
+        setBranch(_head, tip);
+        Utils.message("Replayed %d of %d commits onto %s.", made.size(),
+                      todo.size(), branchName);
+    }
+
+    /** Checks that nothing is staged for addition or removal. */
+    private void checkNoChanges() {
+        if (_stagingArea.size() != 0 || _untrackedFiles.size() != 0) {
+            throw Utils.error("You have uncommitted changes.");
+        }
+    }
+
+    /*********************** SPARSE CHECKOUT ****************************/
+
+    /** Limits the working directory to the files whose names match one
+     * of a list of glob patterns; commits still track every file, and
+     * those outside are left as they are in the head commit. Takes in
+     * ARGS, which are one of set <pattern>..., add <pattern>...,
+     * list, and disable. */
+    public void sparseCheckout(String[] args) {
+        String cmd = args.length == 0 ? "" : args[0];
+        List<String> rest = Arrays.asList(args).subList(
+            Math.min(1, args.length), args.length);
+        if (cmd.equals("list") && rest.isEmpty()) {
+            if (_sparse != null) {
+                for (String pattern : _sparse) {
+                    Utils.out().println(pattern);
+                }
+            }
+        } else if (cmd.equals("set") && !rest.isEmpty()) {
+            resparsify(new ArrayList<String>(rest));
+        } else if (cmd.equals("add") && !rest.isEmpty()) {
+            ArrayList<String> patterns = _sparse == null
+                ? new ArrayList<String>() : new ArrayList<String>(_sparse);
+            for (String pattern : rest) {
+                if (!patterns.contains(pattern)) {
+                    patterns.add(pattern);
+                }
+            }
+            resparsify(patterns);
+        } else if (cmd.equals("disable") && rest.isEmpty()) {
+            resparsify(null);
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Makes PATTERNS, or everything if null, the sparse checkout,
+     * removing the working files of the head commit that leave it and
+     * writing those that enter. Fails, changing nothing, if a file
+     * leaving has uncommitted changes or a file entering would
+     * overwrite an untracked one. */
+    private void resparsify(ArrayList<String> patterns) {
+        List<PathMatcher> before = matchers();
+        List<PathMatcher> after = compile(patterns);
+        HashMap<String, String> tracked = treeOf(getHead());
+        List<String> leaving = new ArrayList<String>();
+        HashMap<String, String> entering = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : tracked.entrySet()) {
+            String name = e.getKey();
+            boolean was = matches(before, name), is = matches(after, name);
+            boolean exists = work().exists(name);
+            if (was && !is && exists) {
+                if (_stagingArea.containsKey(name)
+                    || !unmodified(name, e.getValue())) {
+                    throw Utils.error("You have uncommitted changes.");
+                }
+                leaving.add(name);
+            } else if (!was && is) {
+                if (exists && !unmodified(name, e.getValue())) {
+                    throw Utils.error("There is an untracked file in the way; "
+                                  + "delete it or add it first.");
+                }
+                entering.put(name, e.getValue());
+            }
+        }
+        for (String name : leaving) {
+            work().delete(name);
+        }
+        _sparse = patterns;
+        _sparseMatchers = after;
+        materialize(entering);
+    }
+
+    /** Returns true iff the working file NAME is in the sparse
+     * checkout, which holds every file if there is none. */
+    private boolean inSparse(String name) {
+        return matches(matchers(), name);
+    }
+
+    /** Returns FILES, a map from file names, limited to those in the
+     * sparse checkout. */
+    private <V> Map<String, V> sparse(Map<String, V> files) {
+        if (_sparse == null) {
+            return files;
+        }
+        HashMap<String, V> result = new HashMap<String, V>();
+        for (String name : sparseNames(files.keySet())) {
+            result.put(name, files.get(name));
+        }
+        return result;
+    }
+
+    /** Returns those of NAMES in the sparse checkout. When every
+     * pattern is a plain file name, each is looked up in NAMES rather
+     * than matching every name against the patterns, so the cost
+     * depends on the sparse checkout, not on the size of the tree. */
+    private Collection<String> sparseNames(Set<String> names) {
+        if (_sparse == null) {
+            return names;
+        }
+        List<String> result = new ArrayList<String>();
+        boolean literal = true;
+        for (String pattern : _sparse) {
+            literal &= !pattern.matches(".*[*?\\[\\]{}\\\\].*");
+        }
+        if (literal) {
+            for (String pattern : _sparse) {
+                if (names.contains(pattern)) {
+                    result.add(pattern);
+                }
             }
-        } else if (h.containsKey(f) || i.containsKey(f)) {
+        } else {
+            for (String name : names) {
+                if (inSparse(name)) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the compiled patterns of the sparse checkout, or null
+     * if there is none. */
+    private List<PathMatcher> matchers() {
+        if (_sparseMatchers == null && _sparse != null) {
+            _sparseMatchers = compile(_sparse);
+        }
+        return _sparseMatchers;
+    }
+
+    /** Returns the glob PATTERNS compiled, or null if PATTERNS is. */
+    private static List<PathMatcher> compile(List<String> patterns) {
+        if (patterns == null) {
+            return null;
+        }
+        List<PathMatcher> result = new ArrayList<PathMatcher>();
+        try {
+            for (String pattern : patterns) {
+                result.add(FileSystems.getDefault()
+                           .getPathMatcher("glob:" + pattern));
+            }
+        } catch (IllegalArgumentException excp) {
+            throw Utils.error("Invalid pattern.");
+        }
+        return result;
+    }
+
+    /** Returns true iff MATCHERS is null or one of them matches the
+     * file name NAME. */
+    private static boolean matches(List<PathMatcher> matchers,
+                                   String name) {
+        if (matchers == null) {
             return true;
         }
+        Path path = Paths.get(name);
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
         return false;
     }
 
-    /*********************** HELPERS ****************************/
-
-    /** This is how we are going to be capable of returns back and forth
-     * in between each hash and the corresponding commit. Takes in a
-     * String UID, and returns the commit object that corresponds
-     * to that UID. */
-    public Commit uidToCommit(String uid) {
-        File f = new File(".gitlet/commits/" + uid);
-        if (f.exists()) {
-            return Utils.readObject(f, Commit.class);
+    /*********************** WORKTREE ****************************/
+
+    /** Manages the working directories that share this repository's
+     * objects and references, each with its own head branch and
+     * staging area. Takes in ARGS, which are one of
+     * add <path> <branch>, list, remove <path>, and prune. */
+    public void worktree(String[] args) {
+        File common = Worktree.common();
+        if (args.length == 3 && args[0].equals("add")) {
+            worktreeAdd(new File(args[1]), args[2]);
+        } else if (args.length == 1 && args[0].equals("list")) {
+            for (File dir : Worktree.all(common).values()) {
+                Repo repo = isCurrent(dir) ? this : Remote.open(dir);
+                Utils.out().printf("%s %s [%s]%n",
+                                  canonical(dir).getParent(),
+                                  repo.getHead().substring(0, 7),
+                                  repo.getCurrentBranch());
+            }
+        } else if (args.length == 2 && args[0].equals("remove")) {
+            worktreeRemove(new File(args[1], ".gitlet"));
+        } else if (args.length == 1 && args[0].equals("prune")) {
+            Worktree.prune(common);
         } else {
-            Utils.message("No commit with that id exists.");
-            throw new GitletException();
+            throw Utils.error("Incorrect operands.");
         }
     }
 
-    /** Returns the uid of the current head which
-     * corresponds to the head branch. */
-    public String getHead() {
-        return _branches.get(_head);
+    /** Makes WORK, which must not exist or be an empty directory, a new
+     * working directory of this repository with BRANCH checked out.
+     * Its files are written straight from the blob store, since there
+     * is nothing there to compare them with. */
+    private void worktreeAdd(File work, String branch) {
+        if (getBranch(branch) == null) {
+            throw Utils.error("No such branch exists.");
+        }
+        if (_head.equals(branch)) {
+            throw Utils.error("That branch is already checked out.");
+        }
+        checkNotCheckedOut(branch);
+        String[] present = work.list();
+        if (work.exists() && (present == null || present.length > 0)) {
+            throw Utils.error("That path already exists.");
+        }
+        work.mkdirs();
+        Repo repo = new Repo(branch, new HashMap<String, String>());
+        File local = Worktree.create(Worktree.common(), work);
+        Remote.save(local, repo);
+        HashMap<String, String> files = treeOf(getBranch(branch));
+        fetchPromised(files.values());
+        fetchLarge(files.values());
+        Materializer.materialize(files, getConfig("checkout.mode"), work);
     }
 
-    /** Returns branches. */
-    public HashMap<String, String> getBranches() {
-        return _branches;
+    /** In a linked working directory, replaces the settings, remotes
+     * and the state of a shallow or partial clone, which all working
+     * directories share, by those of the repository they share. */
+    void loadShared() {
+        if (Worktree.isLinked()) {
+            copyShared(Remote.open(Worktree.common()), this);
+        }
     }
 
-    /** Returns _stagingArea. */
-    public HashMap<String, String> getStagingArea() {
-        return _stagingArea;
+    /** In a linked working directory, writes the shared state back to
+     * the repository all working directories share, if it changed. That
+     * repository is read again first, so the rest of it is left as it
+     * is now. */
+    void saveShared() {
+        if (!Worktree.isLinked()) {
+            return;
+        }
+        File common = Worktree.common();
+        Repo main = Remote.open(common);
+        if (!Arrays.equals(Utils.serialize(shared(main)),
+                           Utils.serialize(shared(this)))) {
+            copyShared(this, main);
+            Remote.save(common, main);
+        }
     }
 
-    /** Returns untrackedFiles. */
-    public ArrayList<String> getUntrackedFiles() {
-        return _untrackedFiles;
+    /** Returns the state of REPO that working directories share. */
+    private static Serializable[] shared(Repo repo) {
+        return new Serializable[] {
+            repo._remotes, repo._shallow, repo._promisor, repo._promised,
+            repo._config, repo._hashAlgorithm,
+        };
     }
-    /** Overseer of entire tree structure, each branch has a name (String)
-     * and a hash ID of its current position so that we can find the commit
-     * that it's pointing to.*/
-    private HashMap<String, String> _branches;
 
-    /** The head pointer that corresponds to the branch that actually will be
-     * pointing at the commit that we want . */
-    private String _head;
+    /** Copies the state that working directories share from FROM to
+     * TO. */
+    private static void copyShared(Repo from, Repo to) {
+        to._remotes = from._remotes;
+        to._shallow = from._shallow;
+        to._promisor = from._promisor;
+        to._promised = from._promised;
+        to._config = from._config;
+        to._hashAlgorithm = from._hashAlgorithm;
+    }
 
-    /** Staging Area, maps the name of the file, useful for figuring out
-     * whether we need to swap it out for existing file in commit, or add
-     * it entirely new. */
-    private HashMap<String, String> _stagingArea;
+    /** Deletes the linked working directory whose .gitlet directory is
+     * LOCAL, provided that it holds nothing but unmodified tracked
+     * files, and unregisters it. */
+    private void worktreeRemove(File local) {
+        String name = null;
+        for (Map.Entry<String, File> e
+                 : Worktree.all(Worktree.common()).entrySet()) {
+            if (!e.getKey().isEmpty()
+                && canonical(e.getValue()).equals(canonical(local))) {
+                name = e.getKey();
+            }
+        }
+        if (name == null) {
+            throw Utils.error("No such worktree.");
+        }
+        if (isCurrent(local)) {
+            throw Utils.error("Cannot remove the current worktree.");
+        }
+        Repo repo = Remote.open(local);
+        HashMap<String, String> tracked = treeOf(repo.getHead());
+        File work = local.getParentFile();
+        boolean clean = repo.getStagingArea().isEmpty()
+            && repo.getUntrackedFiles().isEmpty();
+        for (File f : work.listFiles()) {
+            if (f.getName().equals(".gitlet")) {
+                continue;
+            }
+            String blob = tracked.get(f.getName());
+            clean &= f.isFile() && blob != null
+                && idAs(f, blob).equals(blob);
+        }
+        if (!clean) {
+            throw Utils.error("That worktree has uncommitted changes.");
+        }
+        try {
+            for (Path p : Files.walk(work.toPath())
+                     .sorted(Collections.reverseOrder())
+                     .toArray(Path[]::new)) {
+                Files.delete(p);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Worktree.unregister(Worktree.common(), name);
+    }
 
-    /** Untracked files are like the opposite of the Staging Area,
-     * these are files that WERE tracked before, and now, for the
-     * next commit, they're not going to be added. */
-    private ArrayList<String> _untrackedFiles;
+    /** Checks that BRANCH is not the head of another working directory
+     * of this repository. */
+    private void checkNotCheckedOut(String branch) {
+        if (!inPlace()) {
+            return;
+        }
+        for (File dir : Worktree.all(Worktree.common()).values()) {
+            if (!isCurrent(dir)
+                && Remote.open(dir).getCurrentBranch().equals(branch)) {
+                throw Utils.error("That branch is already checked out.");
+            }
+        }
+    }
+
+    /** Returns this repository followed by those of the other working
+     * directories sharing its objects, whose staged and stashed work
+     * must be kept alive along with its own. */
+    List<Repo> worktrees() {
+        List<Repo> result = new ArrayList<Repo>();
+        result.add(this);
+        if (_dir == null) {
+            for (File dir : Worktree.all(Worktree.common()).values()) {
+                if (!isCurrent(dir)) {
+                    result.add(Remote.open(dir));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true iff DIR is the .gitlet directory of the current
+     * directory. */
+    private static boolean isCurrent(File dir) {
+        return canonical(dir).equals(canonical(new File(".gitlet")));
+    }
+
+    /** Returns the canonical form of F. */
+    private static File canonical(File f) {
+        try {
+            return f.getCanonicalFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /*********************** REMOTES ****************************/
+
+    /** Saves the .gitlet directory at PATH under the remote NAME. */
+    public void addRemote(String name, String path) {
+        if (_remotes == null) {
+            _remotes = new HashMap<String, String>();
+        }
+        if (_remotes.containsKey(name)) {
+            throw Utils.error("A remote with that name already exists.");
+        }
+        _remotes.put(name, path);
+    }
+
+    /** Forgets the remote NAME. */
+    public void rmRemote(String name) {
+        if (_remotes == null || _remotes.remove(name) == null) {
+            throw Utils.error("A remote with that name does not exist.");
+        }
+    }
+
+    /** Brings down the commits of BRANCH in the remote REMOTENAME
+     * that this repository lacks, and points the local branch
+     * REMOTENAME/BRANCH at its head. */
+    public void fetch(String remoteName, String branch) {
+        File remote = remoteDir(remoteName);
+        String head = openRemote(remote).getBranch(branch);
+        if (head == null) {
+            throw Utils.error("That remote does not have that branch.");
+        }
+        Remote.Options opts = new Remote.Options().blobs(_promisor == null)
+            .shallow(openRemote(remote).getShallow(), getShallow());
+        Remote.transfer(remote, Worktree.common(), head, opts);
+        promise(opts.getPromised());
+        reshape(opts);
+        setBranch(remoteName + "/" + branch, head);
+    }
+
+    /** Sends the head of the current branch to BRANCH of the remote
+     * REMOTENAME, which must not have commits that head lacks, nor be
+     * checked out in any of the remote's working directories, whose
+     * files and staging area would no longer match their head. */
+    public void push(String remoteName, String branch) {
+        File remote = remoteDir(remoteName);
+        Repo other = openRemote(remote);
+        String theirs = other.getBranch(branch);
+        String mine = getBranch(_head);
+        File local = Worktree.common();
+        if (theirs != null && !Remote.isAncestor(local, theirs, mine)) {
+            throw Utils.error(
+                "Please pull down remote changes before pushing.");
+        }
+        for (File dir : Worktree.all(remote).values()) {
+            if (Remote.open(dir).getCurrentBranch().equals(branch)) {
+                throw Utils.error(
+                    "That branch is checked out in the remote.");
+            }
+        }
+        Remote.Options opts = new Remote.Options()
+            .shallow(getShallow(), other.getShallow());
+        Remote.transfer(local, remote, mine, opts);
+        Lfs.sync(local, remote);
+        other.reshape(opts);
+        other.setBranch(branch, mine);
+        Remote.save(remote, other);
+    }
+
+    /** Fetches BRANCH of the remote REMOTENAME and merges it into the
+     * current branch. */
+    public void pull(String remoteName, String branch) {
+        checkNotBisecting();
+        fetch(remoteName, branch);
+        merge(remoteName + "/" + branch);
+    }
+
+    /** Fills this freshly initialized repository from the .gitlet
+     * directory at PATH, which becomes the remote origin. Every branch
+     * but the remote's own remote-tracking ones is copied and the
+     * remote's current branch is checked out. History is cut off after
+     * DEPTH generations of each branch unless DEPTH is negative, and
+     * wherever the remote's own history is cut off. Unless BLOBS, only
+     * the commits are copied, and blobs are brought down from origin
+     * the first time they are needed. */
+    void cloneFrom(String path, int depth, boolean blobs) {
+        addRemote("origin", path);
+        File remote = remoteDir("origin");
+        Repo other = openRemote(remote);
+        File local = Worktree.common();
+        if (!blobs) {
+            _promisor = "origin";
+        }
+        String initial = getHead();
+        _shallow = new HashSet<String>();
+        for (Map.Entry<String, String> e
+                 : other.getBranches().entrySet()) {
+            String branch = e.getKey();
+            String head = e.getValue();
+            if (other.isRemoteBranch(branch)) {
+                continue;
+            }
+            Remote.Options opts = new Remote.Options().depth(depth)
+                .blobs(blobs).shallow(other.getShallow(), getShallow());
+            Remote.transfer(remote, local, head, opts);
+            reshape(opts);
+            promise(opts.getPromised());
+            setBranch(branch, head);
+            setBranch("origin/" + branch, head);
+        }
+        _head = other.getCurrentBranch();
+        if (!reachable(initial)) {
+            Worktree.commit(initial).delete();
+        }
+        HashMap<String, String> files = uidToCommit(getHead()).getFiles();
+        materialize(files);
+    }
+
+    /** Returns true iff the commit UID is a branch head or one of their
+     * ancestors here. A clone whose history is cut off does not reach
+     * the initial commit it was created with. */
+    private boolean reachable(String uid) {
+        Set<String> seen = new HashSet<String>();
+        Deque<String> queue = new ArrayDeque<String>(getBranches().values());
+        while (!queue.isEmpty()) {
+            String cur = queue.poll();
+            if (cur.equals(uid)) {
+                return true;
+            }
+            String[] parents = uidToCommit(cur).getParents();
+            if (seen.add(cur) && parents != null && !isShallow(cur)) {
+                queue.addAll(Arrays.asList(parents));
+            }
+        }
+        return false;
+    }
+
+    /** Returns true iff NAME is that of a branch tracking one of a
+     * remote's, named REMOTE/BRANCH. */
+    private boolean isRemoteBranch(String name) {
+        int slash = name.indexOf('/');
+        return slash > 0 && _remotes != null
+            && _remotes.containsKey(name.substring(0, slash));
+    }
+
+    /** Records which commits a transfer into this repository, limited
+     * as described by OPTS, left without their parents, and which it
+     * gave back their parents. */
+    private void reshape(Remote.Options opts) {
+        if (_shallow == null) {
+            _shallow = new HashSet<String>();
+        }
+        _shallow.removeAll(opts.getDeepened());
+        _shallow.addAll(opts.getShallow());
+    }
+
+    /** Records the blobs IDS as promised by the promisor remote. */
+    private void promise(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (_promised == null) {
+            _promised = new HashSet<String>();
+        }
+        _promised.addAll(ids);
+    }
+
+    /** Brings down from the promisor remote, in one pack, those of the
+     * blobs IDS that were promised and are not yet present. */
+    private void fetchPromised(Collection<String> ids) {
+        if (_promised == null || _promised.isEmpty()) {
+            return;
+        }
+        List<String> wanted = new ArrayList<String>();
+        for (String id : ids) {
+            if (id != null && _promised.contains(id)) {
+                wanted.add(id);
+            }
+        }
+        if (wanted.isEmpty()) {
+            return;
+        }
+        File local = Worktree.common();
+        Remote.transferBlobs(remoteDir(_promisor), local, wanted);
+        for (String id : wanted) {
+            if (new File(local, "staging/" + id).exists()) {
+                _promised.remove(id);
+            }
+        }
+    }
+
+    /** Brings down from the remotes the large objects that those of
+     * the blobs IDS that are pointers point to, where this repository
+     * lacks them. */
+    private void fetchLarge(Collection<String> ids) {
+        if (!inPlace()) {
+            return;
+        }
+        List<String> missing = Lfs.missing(ids);
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<File> sources = new ArrayList<File>();
+        if (_remotes != null) {
+            for (String path : _remotes.values()) {
+                File dir = new File(path.replace("/", File.separator));
+                if (dir.isDirectory()) {
+                    sources.add(Worktree.commonOf(dir));
+                }
+            }
+        }
+        if (!Lfs.fetch(missing, sources)) {
+            throw Utils.error("Contents of a large file are not available.");
+        }
+    }
+
+    /** Returns the .gitlet directory of the remote NAME. */
+    private File remoteDir(String name) {
+        if (_remotes == null || !_remotes.containsKey(name)) {
+            throw Utils.error("A remote with that name does not exist.");
+        }
+        return Remote.locate(_remotes.get(name));
+    }
+
+    /** Returns the repository in the remote .gitlet directory DIR,
+     * after checking that it names objects as this one does. */
+    private Repo openRemote(File dir) {
+        Repo other = Remote.open(dir);
+        if (!other.getHashAlgorithm().equals(getHashAlgorithm())) {
+            throw Utils.error("That remote uses a different hash algorithm.");
+        }
+        return other;
+    }
+
+    /*********************** CONFIG ****************************/
+
+    /** Takes in ARGS: a KEY to print the setting of, a KEY and a
+     * VALUE to change it, or --unset and a KEY to remove it. */
+    public void config(String[] args) {
+        if (_config == null) {
+            _config = new HashMap<String, String>();
+        }
+        if (args.length == 1 && _config.containsKey(args[0])) {
+            Utils.out().println(_config.get(args[0]));
+        } else if (args.length == 1) {
+            throw Utils.error("No such setting.");
+        } else if (args.length == 2 && args[0].equals("--unset")) {
+            _config.remove(args[1]);
+        } else if (args.length == 2) {
+            checkSetting(args[0], args[1]);
+            _config.put(args[0], args[1]);
+            if (args[0].equals("checkout.mode")
+                && args[1].equals(Materializer.LINK)) {
+                Utils.message(LINK_WARNING);
+            }
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Checks that VALUE is a valid setting of KEY. */
+    private static void checkSetting(String key, String value) {
+        boolean valid;
+        switch (key) {
+        case "checkout.mode":
+            valid = Materializer.isMode(value);
+            break;
+        case "lfs.threshold":
+            valid = value.matches("[1-9][0-9]{0,17}");
+            break;
+        default:
+            throw Utils.error("No such setting.");
+        }
+        if (!valid) {
+            throw Utils.error("Invalid value for %s.", key);
+        }
+    }
+
+    /** Returns the setting of KEY, or null if it is not set. */
+    String getConfig(String key) {
+        return _config == null ? null : _config.get(key);
+    }
+
+    /*********************** BISECT ****************************/
+
+    /** Searches the history of the current branch for the commit that
+     * first went bad. Takes in ARGS, which are one of
+     * start [<bad> [<good>...]], bad [<id>], good [<id>], skip [<id>],
+     * run <command>, and reset. While bisecting, the head is detached
+     * at each commit to be tested, and the current branch is left where
+     * it was; reset returns the working directory to it. */
+    public void bisect(String[] args) {
+        if (args.length == 0) {
+            throw Utils.error("Incorrect operands.");
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        if (args[0].equals("start")) {
+            bisectStart(rest);
+            return;
+        }
+        if (_bisect == null) {
+            throw Utils.error("Not bisecting.");
+        }
+        switch (args[0]) {
+        case "bad":
+        case "good":
+        case "skip":
+            if (rest.length > 1) {
+                throw Utils.error("Incorrect operands.");
+            }
+            String uid = rest.length == 0 ? getHead()
+                : convertShortenedID(rest[0]);
+            bisectMark(args[0], uid);
+            bisectStep();
+            break;
+        case "run":
+            bisectRun(String.join(" ", rest));
+            break;
+        case "reset":
+            switchTree(getHead(), getBranch(_head));
+            _bisect = null;
+            break;
+        default:
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Starts bisecting, with the first of IDS, if any, bad and the
+     * rest good. */
+    private void bisectStart(String[] ids) {
+        if (_bisect != null) {
+            throw Utils.error("Already bisecting.");
+        }
+        if (_stagingArea.size() != 0 || _untrackedFiles.size() != 0) {
+            throw Utils.error("You have uncommitted changes.");
+        }
+        _bisect = new Bisect(getHead());
+        for (int i = 0; i < ids.length; i += 1) {
+            bisectMark(i == 0 ? "bad" : "good", convertShortenedID(ids[i]));
+        }
+        bisectStep();
+    }
+
+    /** Marks the commit UID as HOW, which is "bad", "good" or "skip". */
+    private void bisectMark(String how, String uid) {
+        switch (how) {
+        case "bad":
+            _bisect.markBad(uid);
+            break;
+        case "good":
+            _bisect.markGood(uid);
+            break;
+        default:
+            _bisect.markSkipped(uid);
+            break;
+        }
+    }
+
+    /** Moves to the next commit to test, if both a good and a bad one
+     * are known. Returns true iff there is nothing left to test. */
+    private boolean bisectStep() {
+        if (!_bisect.isReady()) {
+            return false;
+        }
+        Set<String> candidates = _bisect.candidates(this);
+        String found = _bisect.firstBad(candidates);
+        if (found != null) {
+            Utils.out().println(found + " is the first bad commit");
+            printACommit(found);
+            return true;
+        }
+        String next = _bisect.next(this, candidates);
+        if (next == null) {
+            Utils.message("There are only skipped commits left to test.");
+            return true;
+        }
+        switchTree(getHead(), next);
+        _bisect.setCurrent(next);
+        int left = candidates.size() / 2;
+        int steps = 32 - Integer.numberOfLeadingZeros(left);
+        Utils.message("Bisecting: %d revisions left to test after this "
+                      + "(roughly %d steps)", left, steps);
+        Utils.message("[%s] %s", next, uidToCommit(next).getMessage());
+        return false;
+    }
+
+    /** Runs COMMAND through the shell in the working directory on each
+     * commit to test, taking exit code 0 as good, 125 as untestable,
+     * and any other code below 128 as bad, until the first bad commit
+     * is found. The command is run by sh, so it must be on the PATH,
+     * and what it prints to either stream goes to Utils.out(). */
+    private void bisectRun(String command) {
+        if (!_bisect.isReady()) {
+            throw Utils.error("Mark a good and a bad commit first.");
+        }
+        boolean done = false;
+        while (!done) {
+            int code = runShell(command);
+            if (code >= BISECT_ABORT || code < 0) {
+                throw Utils.error("bisect run failed: exit code %d", code);
+            }
+            String how = code == 0 ? "good"
+                : code == BISECT_SKIP ? "skip" : "bad";
+            bisectMark(how, getHead());
+            done = bisectStep();
+        }
+        Utils.message("Tested %d commits; a linear scan could have tested "
+                      + "up to %d.", _bisect.getSteps(),
+                      _bisect.getInitialCount() - 1);
+    }
+
+    /** Runs COMMAND with sh -c in the working directory, copying its
+     * output and error output to Utils.out(), and returns its exit
+     * code. */
+    private int runShell(String command) {
+        Process test;
+        try {
+            test = new ProcessBuilder("sh", "-c", command)
+                .directory(((FileWorkingTree) work()).dir())
+                .redirectInput(ProcessBuilder.Redirect.INHERIT)
+                .redirectErrorStream(true).start();
+        } catch (IOException excp) {
+            throw Utils.error("bisect run needs sh on the PATH.");
+        }
+        try (InputStream output = test.getInputStream()) {
+            output.transferTo(Utils.out());
+            Utils.out().flush();
+            return test.waitFor();
+        } catch (IOException | InterruptedException excp) {
+            test.destroy();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Changes the working directory from the tree of commit FROM to
+     * that of commit TO. */
+    private void switchTree(String from, String to) {
+        switchTree(treeOf(from), treeOf(to));
+    }
+
+    /** Changes the working directory from the tree OLD to the tree
+     * TARGET, both of which map file names to blob ids, writing only
+     * the files whose blobs differ and deleting those TARGET does not
+     * track. */
+    private void switchTree(Map<String, String> old,
+                            Map<String, String> target) {
+        HashMap<String, String> changed = new HashMap<String, String>();
+        for (String name : target.keySet()) {
+            String blob = target.get(name);
+            if (!blob.equals(old.get(name))) {
+                if (!old.containsKey(name) && inSparse(name)
+                    && work().exists(name)) {
+                    throw Utils.error("There is an untracked file in the way; "
+                                  + "delete it or add it first.");
+                }
+                changed.put(name, blob);
+            }
+        }
+        for (String name : old.keySet()) {
+            if (!target.containsKey(name) && inSparse(name)) {
+                work().delete(name);
+            }
+        }
+        materialize(changed);
+    }
+
+    /*********************** STASH ****************************/
+
+    /** Sets uncommitted work aside or brings it back. Takes in ARGS,
+     * which are one of push [<message>], pop [<n>], list, and
+     * drop [<n>], where N (default 0) counts back from the most
+     * recent snapshot. */
+    public void stash(String[] args) {
+        String cmd = args.length == 0 ? "push" : args[0];
+        if (_stashes == null) {
+            _stashes = new ArrayList<String>();
+        }
+        if (cmd.equals("push") && args.length <= 2) {
+            stashPush(args.length == 2 ? args[1] : null);
+        } else if (cmd.equals("list") && args.length == 1) {
+            for (int i = 0; i < _stashes.size(); i += 1) {
+                Stash entry = readStash(_stashes.get(i));
+                Utils.out().printf("stash@{%d}: On %s: %s%n", i,
+                                  entry.getBranch(), entry.getMessage());
+            }
+        } else if (cmd.equals("pop") && args.length <= 2) {
+            int n = stashIndex(args);
+            stashApply(readStash(_stashes.get(n)));
+            dropStash(_stashes.remove(n));
+        } else if (cmd.equals("drop") && args.length <= 2) {
+            int n = stashIndex(args);
+            dropStash(_stashes.remove(n));
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+    }
+
+    /** Returns the snapshot stored under ID. */
+    private Stash readStash(String id) {
+        return inPlace() ? Stash.read(id) : _stashed.get(id);
+    }
+
+    /** Stores ENTRY and returns its id. A repository that is not in a
+     * .gitlet directory keeps its snapshots itself. */
+    private String writeStash(Stash entry) {
+        if (inPlace()) {
+            return entry.write();
+        }
+        if (_stashed == null) {
+            _stashed = new HashMap<String, Stash>();
+        }
+        return entry.write(_stashed);
+    }
+
+    /** Removes the snapshot stored under ID. */
+    private void dropStash(String id) {
+        if (inPlace()) {
+            Stash.delete(id);
+        } else {
+            _stashed.remove(id);
+        }
+    }
+
+    /** Returns the index of the snapshot named by ARGS[1], which is a
+     * number or stash@{<number>}, or 0 if there is none. */
+    private int stashIndex(String[] args) {
+        if (_stashes.isEmpty()) {
+            throw Utils.error("No stash entries found.");
+        }
+        if (args.length == 1) {
+            return 0;
+        }
+        String name = args[1].replaceAll("^stash@\\{([0-9]+)\\}$", "$1");
+        int n = name.matches("[0-9]{1,9}") ? Integer.parseInt(name) : -1;
+        if (n < 0 || n >= _stashes.size()) {
+            throw Utils.error("No stash entry %s.", args[1]);
+        }
+        return n;
+    }
+
+    /** Records the staging area and the unstaged changes to working
+     * files as a new snapshot described by MESSAGE (or a default),
+     * then returns the working directory to the head commit. Working
+     * files are only hashed if the stat cache cannot vouch for them,
+     * and only blobs not already stored are written. */
+    private void stashPush(String message) {
+        HashMap<String, String> tracked = uidToCommit(getHead()).getFiles();
+        if (tracked == null) {
+            tracked = new HashMap<String, String>();
+        }
+        ArrayList<String> modified = new ArrayList<String>();
+        ArrayList<String> deleted = new ArrayList<String>();
+        scanWorkingTree(modified, deleted, new ArrayList<String>());
+        HashMap<String, String> changed = new HashMap<String, String>();
+        for (String name : modified) {
+            changed.put(name, blobOf(name));
+        }
+        if (_stagingArea.isEmpty() && _untrackedFiles.isEmpty()
+            && changed.isEmpty() && deleted.isEmpty()) {
+            throw Utils.error("No local changes to save.");
+        }
+        if (message == null) {
+            message = "WIP on " + _head + ": " + getHead().substring(0, 7)
+                + " " + uidToCommit(getHead()).getMessage();
+        }
+        Stash entry = new Stash(message, _head, getHead(),
+                                new HashMap<String, String>(_stagingArea),
+                                new ArrayList<String>(_untrackedFiles),
+                                changed, deleted);
+        _stashes.add(0, writeStash(entry));
+        HashMap<String, String> restore = new HashMap<String, String>();
+        for (String name : entry.names()) {
+            if (tracked.containsKey(name)) {
+                restore.put(name, tracked.get(name));
+            } else {
+                work().delete(name);
+            }
+        }
+        materialize(restore);
+        for (String name : restore.keySet()) {
+            remember(name, restore.get(name));
+        }
+        _stagingArea = new HashMap<String, String>();
+        _untrackedFiles = new ArrayList<String>();
+    }
+
+    /** Brings back the work recorded in ENTRY on top of the current
+     * head, refusing if that would overwrite any local change. */
+    private void stashApply(Stash entry) {
+        HashMap<String, String> tracked = uidToCommit(getHead()).getFiles();
+        if (tracked == null) {
+            tracked = new HashMap<String, String>();
+        }
+        for (String name : entry.names()) {
+            String blob = tracked.get(name);
+            boolean clean = blob == null ? !work().exists(name)
+                : work().exists(name) && unmodified(name, blob);
+            if (!clean || _stagingArea.containsKey(name)
+                || _untrackedFiles.contains(name)) {
+                throw Utils.error("Your local changes to %s would be "
+                              + "overwritten by stash pop.", name);
+            }
+        }
+        HashMap<String, String> write = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : entry.getStaged().entrySet()) {
+            String name = e.getKey();
+            if (!e.getValue().equals(tracked.get(name))) {
+                _stagingArea.put(name, e.getValue());
+            }
+            write.put(name, e.getValue());
+        }
+        for (String name : entry.getRemoved()) {
+            if (tracked.containsKey(name)) {
+                _untrackedFiles.add(name);
+            }
+            work().delete(name);
+        }
+        write.putAll(entry.getChanged());
+        for (String name : entry.getDeleted()) {
+            write.remove(name);
+            work().delete(name);
+        }
+        materialize(write);
+    }
+
+    /** Returns the ids of the stored snapshots, most recent first. */
+    List<String> getStashes() {
+        return _stashes == null ? new ArrayList<String>() : _stashes;
+    }
+
+    /*********************** BLAME ****************************/
+
+    /** Prints each line of the file FILENAME as of the head commit,
+     * preceded by the commit that last changed it, its date, and the
+     * line number. */
+    public void blame(String fileName) {
+        String head = getHead();
+        HashMap<String, String> files = uidToCommit(head).getFiles();
+        if (files == null || !files.containsKey(fileName)) {
+            throw Utils.error("File does not exist in that commit.");
+        }
+        List<String[]> lines = Blame.annotate(this, fileName, head);
+        String width = Integer.toString(Integer.toString(lines.size())
+                                        .length());
+        HashMap<String, String> dates = new HashMap<String, String>();
+        int number = 1;
+        for (String[] line : lines) {
+            String date = dates.computeIfAbsent(line[0],
+                uid -> uidToCommit(uid).getTimestamp());
+            Utils.out().printf("%s (%s %" + width + "d) %s%n",
+                              line[0].substring(0, 8), date, number,
+                              line[1]);
+            number += 1;
+        }
+    }
+
+    /*********************** ARCHIVE ****************************/
+
+    /** Writes the files of a commit to an archive, reading them from
+     * the object store rather than the working directory. Takes in
+     * ARGS: a commit, branch or tag, then optionally --format=FORMAT
+     * (tar, tar.gz or zip) and -o FILE. Without -o, the archive goes
+     * to the standard output; without --format, the format follows
+     * the name of FILE, and is otherwise tar. */
+    public void archive(String[] args) {
+        String format = null, output = null;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].startsWith("--format=")) {
+                format = args[i].substring(9);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                i += 1;
+                output = args[i];
+            } else {
+                args = null;
+                break;
+            }
+        }
+        if (args == null || args.length == 0
+            || format != null && !Archive.isFormat(format)) {
+            throw Utils.error("Incorrect operands.");
+        }
+        if (format == null) {
+            format = output == null ? Archive.TAR : Archive.formatOf(output);
+        }
+        String uid = getBranch(args[0]) != null ? getBranch(args[0])
+            : convertShortenedID(args[0]);
+        TreeMap<String, String> files = new TreeMap<String, String>(
+            treeOf(uid));
+        fetchPromised(files.values());
+        fetchLarge(files.values());
+        Archive archive = new Archive(format, uid,
+                                      commitTime(uidToCommit(uid)));
+        try (OutputStream file = output == null ? null
+                 : new FileOutputStream(output)) {
+            OutputStream out = file == null ? Utils.out() : file;
+            archive.write(files, new BufferedOutputStream(out, 1 << 16));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the time COMM was made, in milliseconds since the
+     * epoch, or 0 for the initial commit. Timestamps are written in
+     * local time, whatever zone they are labelled with. */
+    private static long commitTime(Commit comm) {
+        try {
+            return Math.max(0, Commit.DATE_FORMAT.parse(comm.getTimestamp())
+                            .getTime());
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
+    /*********************** MIGRATE ****************************/
+
+    /** Rewrites every commit whose id was computed by an earlier
+     * version of gitlet, and points the branches, tags, shallow markers,
+     * stashes and bisections of every working directory at the new
+     * ids before deleting the old commits. Remotes holding the same
+     * history must be migrated too. */
+    public void migrate() {
+        Map<String, String> renames = Migrator.rewriteCommits();
+        int changed = 0;
+        for (Map.Entry<String, String> e : renames.entrySet()) {
+            if (!e.getKey().equals(e.getValue())) {
+                changed += 1;
+            }
+        }
+        for (Map.Entry<String, String> e : getBranches().entrySet()) {
+            String uid = e.getValue();
+            setBranch(e.getKey(), renames.getOrDefault(uid, uid));
+        }
+        for (Map.Entry<String, String> e : getTags().entrySet()) {
+            String uid = e.getValue();
+            if (renames.containsKey(uid) && !renames.get(uid).equals(uid)) {
+                refs().update(Refs.TAGS + e.getKey(), renames.get(uid));
+            }
+        }
+        if (_shallow != null) {
+            HashSet<String> shallow = new HashSet<String>();
+            for (String uid : _shallow) {
+                shallow.add(renames.getOrDefault(uid, uid));
+            }
+            _shallow = shallow;
+        }
+        for (Repo worktree : worktrees()) {
+            if (worktree.renameCommits(renames) && worktree != this) {
+                Remote.save(worktree._dir, worktree);
+            }
+        }
+        Migrator.retire(renames);
+        Utils.message("Rewrote %d of %d commits.", changed, renames.size());
+    }
+
+    /** Points the stashes and the bisection of this working directory
+     * at the new commit ids in RENAMES, which maps old ids to new ones.
+     * Each stash whose base changes is stored again under a new id,
+     * and the old record deleted. Returns true iff anything changed. */
+    private boolean renameCommits(Map<String, String> renames) {
+        boolean changed = false;
+        if (_bisect != null) {
+            _bisect.rename(renames);
+            changed = true;
+        }
+        if (_stashes != null) {
+            for (int i = 0; i < _stashes.size(); i += 1) {
+                Stash entry = Stash.read(_stashes.get(i));
+                if (entry.rename(renames)) {
+                    String old = _stashes.get(i);
+                    _stashes.set(i, entry.write());
+                    Stash.delete(old);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /*********************** GC ****************************/
+
+    /** Deletes commits and blobs that cannot be reached from any
+     * branch or from the staging area. Takes in ARGS, which may hold
+     * --prune=<seconds|now> to set the grace period for recently
+     * written objects and --limit=<n> to bound the work of one run. */
+    public void gc(String[] args) {
+        long grace = GC_GRACE;
+        long limit = -1;
+        for (String arg : args) {
+            if (arg.equals("--prune=now")) {
+                grace = 0;
+            } else if (arg.startsWith("--prune=")) {
+                long seconds = parseCount(arg.substring(8));
+                grace = seconds > Long.MAX_VALUE / 1000 ? Long.MAX_VALUE
+                    : 1000 * seconds;
+            } else if (arg.startsWith("--limit=")) {
+                limit = parseCount(arg.substring(8));
+            } else {
+                throw Utils.error("Incorrect operands.");
+            }
+        }
+        new GarbageCollector(this, grace, limit).collect();
+        refs().pack();
+    }
+
+    /** Rehashes every object and checks that every reference between
+     * them resolves, reporting what is corrupt, missing or dangling. */
+    public void fsck() {
+        new Fsck(this).check();
+    }
+
+    /** Returns the non-negative number written in S. */
+    private static long parseCount(String s) {
+        try {
+            long n = Long.parseLong(s);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            /* Fall through to the error below. */
+        }
+        throw Utils.error("Incorrect operands.");
+    }
+
+    /*********************** HELPERS ****************************/
+
+    /** Returns a copy of the files tracked by the commit UID, mapped to
+     * their blob ids. */
+    HashMap<String, String> treeOf(String uid) {
+        HashMap<String, String> files = uidToCommit(uid).getFiles();
+        return files == null ? new HashMap<String, String>()
+            : new HashMap<String, String>(files);
+    }
+
+    /** Returns the contents of the blob with id ID, fetching it first
+     * if it was left behind by a partial clone. */
+    byte[] readBlob(String id) {
+        fetchPromised(Arrays.asList(id));
+        byte[] contents = store().read(ObjectStore.Kind.BLOB, id);
+        if (contents == null) {
+            throw Utils.error("Contents of that file are missing.");
+        }
+        return contents;
+    }
+
+    /** Stores COMM under its id. */
+    void writeCommit(Commit comm) {
+        store().write(ObjectStore.Kind.COMMIT, comm.getUniversalID(),
+                      Utils.serialize(comm));
+    }
+
+    /** This is how we are going to be capable of returns back and forth
+     * in between each hash and the corresponding commit. Takes in a
+     * String UID, and returns the commit object that corresponds
+     * to that UID. */
+    public Commit uidToCommit(String uid) {
+        byte[] data = store().read(ObjectStore.Kind.COMMIT, uid);
+        if (data != null) {
+            return Utils.deserialize(data, Commit.class);
+        } else {
+            throw Utils.error("No commit with that id exists.");
+        }
+    }
+
+    /** Returns the uid of the current head which
+     * corresponds to the head branch. */
+    public String getHead() {
+        if (_bisect != null && _bisect.getCurrent() != null) {
+            return _bisect.getCurrent();
+        }
+        return getBranch(_head);
+    }
+
+    /** Checks that the head is not detached by a bisection, so that the
+     * current branch may be moved. */
+    private void checkNotBisecting() {
+        if (_bisect != null && _bisect.getCurrent() != null) {
+            throw Utils.error("Cannot do that while bisecting; "
+                              + "run bisect reset first.");
+        }
+    }
+
+    /** Returns the commits a bisection in progress refers to, which
+     * must be kept alive. */
+    List<String> getBisectRoots() {
+        return _bisect == null ? Collections.<String>emptyList()
+            : _bisect.roots();
+    }
+
+    /** Returns true iff the blob ID was left behind by a partial clone,
+     * to be fetched when needed. */
+    public boolean isPromised(String id) {
+        return _promised != null && _promised.contains(id);
+    }
+
+    /** Returns the blobs left behind by a partial clone. */
+    Set<String> getPromised() {
+        return _promised == null ? Collections.<String>emptySet()
+            : Collections.unmodifiableSet(new HashSet<String>(_promised));
+    }
+
+    /** Returns the commits copied here without their parents. */
+    Set<String> getShallow() {
+        return _shallow == null ? Collections.<String>emptySet()
+            : Collections.unmodifiableSet(new HashSet<String>(_shallow));
+    }
+
+    /** Returns true iff the commit UID was copied here without its
+     * parents by a shallow clone. */
+    public boolean isShallow(String uid) {
+        return _shallow != null && _shallow.contains(uid);
+    }
+
+    /** Returns the name of the hash algorithm naming objects in this
+     * repository. */
+    public String getHashAlgorithm() {
+        return _hashAlgorithm == null ? Hashing.SHA1 : _hashAlgorithm;
+    }
+
+    /** Returns the name of the current branch. */
+    public String getCurrentBranch() {
+        return _head;
+    }
+
+    /** Returns the branches, mapped from their names to their heads,
+     * in order of name. */
+    public SortedMap<String, String> getBranches() {
+        return refs().list(Refs.HEADS);
+    }
+
+    /** Returns the head of the branch NAME, or null if there is no such
+     * branch. */
+    public String getBranch(String name) {
+        return refs().resolve(Refs.HEADS + name);
+    }
+
+    /** Points the branch NAME, which is created if need be, at the
+     * commit UID. */
+    public void setBranch(String name, String uid) {
+        refs().update(Refs.HEADS + name, uid);
+    }
+
+    /** Returns the tags, mapped from their names to the commits they
+     * are on, in order of name. */
+    public SortedMap<String, String> getTags() {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        for (Map.Entry<String, String> e
+                 : refs().list(Refs.TAGS).entrySet()) {
+            result.put(e.getKey(), peel(e.getValue()));
+        }
+        return result;
+    }
+
+    /** Returns the commit named by ID, which is either a commit or an
+     * annotated tag. */
+    private String peel(String id) {
+        Tag tag = inPlace() ? Tag.read(gitletDir(), id) : null;
+        return tag == null ? id : tag.getTarget();
+    }
+
+    /** Returns the references of this repository. A repository written
+     * before references were kept in files has its branches moved to
+     * them here, the first time they are needed. */
+    private References refs() {
+        References refs = store().refs();
+        if (_branches != null) {
+            HashMap<String, String> packed = new HashMap<String, String>();
+            for (Map.Entry<String, String> e : _branches.entrySet()) {
+                packed.put(Refs.HEADS + e.getKey(), e.getValue());
+            }
+            refs.replace(packed);
+            _branches = null;
+        }
+        return _refsBefore == null ? refs : new Recorded(refs, _refsBefore);
+    }
+
+    /** Starts keeping note of the references this repository changes,
+     * so that restoreRefs can put them back, if ON; otherwise stops and
+     * forgets them. */
+    void recordRefs(boolean on) {
+        _refsBefore = on ? new HashMap<String, String>() : null;
+    }
+
+    /** Puts back the references changed since recordRefs(true), and
+     * stops keeping note of them. */
+    void restoreRefs() {
+        HashMap<String, String> before = _refsBefore;
+        _refsBefore = null;
+        if (before == null) {
+            return;
+        }
+        References refs = store().refs();
+        for (Map.Entry<String, String> e : before.entrySet()) {
+            if (e.getValue() == null) {
+                refs.delete(e.getKey());
+            } else {
+                refs.update(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** References that note in a map, before changing a reference for
+     * the first time, what it referred to, or null if it did not
+     * exist. */
+    private static class Recorded implements References {
+
+        /** References REFS, noting their earlier values in BEFORE. */
+        Recorded(References refs, HashMap<String, String> before) {
+            _refs = refs;
+            _before = before;
+        }
+
+        @Override
+        public String resolve(String name) {
+            return _refs.resolve(name);
+        }
+
+        @Override
+        public void update(String name, String id) {
+            note(name);
+            _refs.update(name, id);
+        }
+
+        @Override
+        public void delete(String name) {
+            note(name);
+            _refs.delete(name);
+        }
+
+        @Override
+        public SortedMap<String, String> list(String prefix) {
+            return _refs.list(prefix);
+        }
+
+        @Override
+        public void replace(Map<String, String> refs) {
+            for (String space : new String[] {Refs.HEADS, Refs.TAGS}) {
+                for (String name : _refs.list(space).keySet()) {
+                    note(space + name);
+                }
+            }
+            for (String name : refs.keySet()) {
+                note(name);
+            }
+            _refs.replace(refs);
+        }
+
+        @Override
+        public void pack() {
+            _refs.pack();
+        }
+
+        /** Notes what NAME refers to, unless that is noted already. */
+        private void note(String name) {
+            if (!_before.containsKey(name)) {
+                _before.put(name, _refs.resolve(name));
+            }
+        }
+
+        /** The references. */
+        private final References _refs;
+
+        /** Earlier values of the references changed, by full name. */
+        private final HashMap<String, String> _before;
+    }
+
+    /** Returns the store holding the objects and references of this
+     * repository: that of its .gitlet directory unless it was given
+     * another. */
+    ObjectStore store() {
+        if (_store == null) {
+            _store = new FileStore(gitletDir());
+        }
+        return _store;
+    }
+
+    /** Returns the working files of this repository: those of the
+     * current directory unless it was given others. */
+    WorkingTree work() {
+        if (_work == null) {
+            _work = new FileWorkingTree(
+                new File(System.getProperty("user.dir")));
+        }
+        return _work;
+    }
+
+    /** Makes STORE and WORK the store and working files of this
+     * repository, which then lives apart from the current directory. */
+    void attach(ObjectStore store, WorkingTree work) {
+        _store = store;
+        _work = work;
+        _attached = true;
+    }
+
+    /** Returns true iff this repository lives in a .gitlet directory,
+     * and so has the commit graph, tags, watcher, large-file store and
+     * linked working directories that only a directory can hold. */
+    boolean inPlace() {
+        return !_attached;
+    }
+
+    /** Returns the .gitlet directory holding the references of this
+     * repository, which a linked working directory shares. */
+    private File gitletDir() {
+        return _dir == null ? Worktree.common() : Worktree.commonOf(_dir);
+    }
+
+    /** Makes DIR the .gitlet directory of this repository, which was
+     * read from there rather than from the current directory. */
+    void setDirectory(File dir) {
+        _dir = dir;
+        _store = null;
+    }
+
+    /** Returns _stagingArea. */
+    public HashMap<String, String> getStagingArea() {
+        return _stagingArea;
+    }
+
+    /** Returns untrackedFiles. */
+    public ArrayList<String> getUntrackedFiles() {
+        return _untrackedFiles;
+    }
+    /** Pinned so that repositories written by earlier versions of
+     * gitlet can still be read. */
+    private static final long serialVersionUID = -5798902100039912207L;
+
+    /** Files modified more recently than this many milliseconds ago
+     * are kept out of the stat cache. */
+    private static final long RACY_WINDOW = 2000;
+
+    /** Message for a command that only a repository on disk can run. */
+    static final String ON_DISK = "That command needs a repository on disk.";
+
+    /** Exit code of a bisect run command for an untestable commit. */
+    private static final int BISECT_SKIP = 125;
+
+    /** Exit codes of a bisect run command at or above this abort the
+     * run. */
+    private static final int BISECT_ABORT = 128;
+
+    /** Printed when link mode is chosen. */
+    private static final String LINK_WARNING = "Warning: in link mode, "
+        + "working files share storage with committed blobs, and a "
+        + "program that rewrites one in place changes history.";
+
+    /** Default grace period of gc, in milliseconds: two weeks. */
+    private static final long GC_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** The branches of a repository written before references were
+     * kept in .gitlet/refs and .gitlet/packed-refs, each name mapped to
+     * the hash ID of its head, until they are moved there; otherwise
+     * null. */
+    private HashMap<String, String> _branches;
+
+    /** The store of objects and references, made from _dir unless
+     * attached. */
+    private transient ObjectStore _store;
+
+    /** The working files, those of the current directory unless
+     * attached. */
+    private transient WorkingTree _work;
+
+    /** True iff _store and _work were given rather than found. */
+    private transient boolean _attached;
+
+    /** The .gitlet directory this repository was read from, if it is
+     * not the one in the current directory. */
+    private transient File _dir;
+
+    /** While a command runs, what each reference it changed referred to
+     * before, null for none, by full name; otherwise null. */
+    private transient HashMap<String, String> _refsBefore;
+
+    /** The head pointer that corresponds to the branch that actually will be
+     * pointing at the commit that we want . */
+    private String _head;
+
+    /** Staging Area, maps the name of the file, useful for figuring out
+     * whether we need to swap it out for existing file in commit, or add
+     * it entirely new. */
+    private HashMap<String, String> _stagingArea;
+
+    /** Untracked files are like the opposite of the Staging Area,
+     * these are files that WERE tracked before, and now, for the
+     * next commit, they're not going to be added. */
+    private ArrayList<String> _untrackedFiles;
+
+    /** Remote repositories, mapping each remote's name to the path of
+     * its .gitlet directory. */
+    private HashMap<String, String> _remotes;
+
+    /** Commits whose parents were left out by a shallow clone. */
+    private HashSet<String> _shallow;
+
+    /** Name of the remote that promised the missing blobs of a
+     * partial clone, or null if this is not a partial clone. */
+    private String _promisor;
+
+    /** Ids of blobs referenced by local commits that have not yet
+     * been brought down from the promisor remote. */
+    private HashSet<String> _promised;
+
+    /** Stat cache: maps working file names to "SIZE:MTIME:BLOB",
+     * recording that a file of that size and modification time was
+     * found to hold that blob. */
+    private HashMap<String, String> _stat;
+
+    /** Settings changed with the config command. */
+    private HashMap<String, String> _config;
+
+    /** Hash algorithm naming objects, or null for SHA-1, which is what
+     * repositories made before the choice existed use. */
+    private String _hashAlgorithm;
+
+    /** Ids of the stored snapshots of uncommitted work, most recent
+     * first, or null if there have never been any. */
+    private ArrayList<String> _stashes;
+
+    /** The snapshots named by _stashes, by id, for a repository that is
+     * not in a .gitlet directory; otherwise null. */
+    private HashMap<String, Stash> _stashed;
+
+    /** The bisection in progress, or null. */
+    private Bisect _bisect;
+
+    /** Glob patterns naming the files of a sparse checkout, or null
+     * if every file is checked out. */
+    private ArrayList<String> _sparse;
+
+    /** The patterns of _sparse, compiled when first needed. */
+    private transient List<PathMatcher> _sparseMatchers;
 }
@@ -0,0 +1,255 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The branches and tags of a repository as they stood at one moment,
+ * with the commits and file contents they lead to. Commits and blobs
+ * never change once written, so a snapshot reads them straight from
+ * the object store without locking, and neither its answers nor its
+ * thread safety are affected by commands run after it was taken.
+ * @author Max Miranda */
+public final class Snapshot {
+
+    /** A snapshot of REPO as it now stands. */
+    Snapshot(Repo repo) {
+        _branch = repo.getCurrentBranch();
+        _head = repo.getHead();
+        _branches = Collections.unmodifiableSortedMap(
+            new TreeMap<String, String>(repo.getBranches()));
+        _tags = Collections.unmodifiableSortedMap(
+            new TreeMap<String, String>(repo.getTags()));
+        _shallow = repo.getShallow();
+        _promised = repo.getPromised();
+        _store = repo.store();
+        _inPlace = repo.inPlace();
+    }
+
+    /** Returns the name of the current branch. */
+    public String branch() {
+        return _branch;
+    }
+
+    /** Returns the id of the head commit of the current branch. */
+    public String head() {
+        return _head;
+    }
+
+    /** Returns the branches, mapped from their names to their heads. */
+    public SortedMap<String, String> branches() {
+        return _branches;
+    }
+
+    /** Returns the tags, mapped from their names to their commits. */
+    public SortedMap<String, String> tags() {
+        return _tags;
+    }
+
+    /** Returns the commit with the full id UID. */
+    public CommitInfo commit(String uid) {
+        byte[] data = _store.read(ObjectStore.Kind.COMMIT, uid);
+        if (data == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        return new CommitInfo(uid, Utils.deserialize(data, Commit.class),
+                              _shallow.contains(uid));
+    }
+
+    /** Returns the history of the head commit, newest first, following
+     * first parents only, as log shows it. Commits are read as the
+     * iteration reaches them. */
+    public Iterable<CommitInfo> log() {
+        return log(_head);
+    }
+
+    /** Returns the history of the commit UID, as for log(). */
+    public Iterable<CommitInfo> log(String uid) {
+        return () -> new Iterator<CommitInfo>() {
+            @Override
+            public boolean hasNext() {
+                return _next != null;
+            }
+
+            @Override
+            public CommitInfo next() {
+                if (_next == null) {
+                    throw new NoSuchElementException();
+                }
+                CommitInfo result = commit(_next);
+                List<String> parents = result.parents();
+                _next = parents.isEmpty() ? null : parents.get(0);
+                return result;
+            }
+
+            /** The commit to be returned next. */
+            private String _next = uid;
+        };
+    }
+
+    /** Returns the files of the head commit, mapped to their blob ids. */
+    public SortedMap<String, String> files() {
+        return commit(_head).files();
+    }
+
+    /** Returns the contents of the file NAME in the head commit. */
+    public byte[] read(String name) {
+        return read(_head, name);
+    }
+
+    /** Returns the contents of the file NAME in the commit UID. */
+    public byte[] read(String uid, String name) {
+        String id = commit(uid).files().get(name);
+        if (id == null) {
+            throw Utils.error("File does not exist in that commit.");
+        }
+        File contents = _inPlace ? Lfs.content(id) : null;
+        byte[] result = contents == null
+            ? _store.read(ObjectStore.Kind.BLOB, id)
+            : contents.isFile() ? Utils.readContents(contents) : null;
+        if (result == null) {
+            throw Utils.error(_promised.contains(id)
+                              ? "Contents of that file have not been fetched."
+                              : "Contents of that file are missing.");
+        }
+        return result;
+    }
+
+    /** Returns the files that differ between the commits FROM and TO,
+     * in order of name. Only the trees are compared; no file contents
+     * are read. */
+    public List<Change> diff(String from, String to) {
+        SortedMap<String, String> before = commit(from).files();
+        SortedMap<String, String> after = commit(to).files();
+        TreeSet<String> names = new TreeSet<String>(before.keySet());
+        names.addAll(after.keySet());
+        List<Change> result = new ArrayList<Change>();
+        for (String name : names) {
+            String was = before.get(name), is = after.get(name);
+            if (!Objects.equals(was, is)) {
+                result.add(new Change(name, was, is));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /** A commit, as read from the object store. */
+    public static final class CommitInfo {
+
+        /** The commit COMM, whose id is UID, its parents hidden if
+         * SHALLOW. */
+        CommitInfo(String uid, Commit comm, boolean shallow) {
+            _id = uid;
+            _message = comm.getMessage();
+            _timestamp = comm.getTimestamp();
+            _parents = shallow || comm.getParents() == null
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(
+                    Arrays.asList(comm.getParents().clone()));
+            Map<String, String> files = comm.getFiles();
+            _files = Collections.unmodifiableSortedMap(
+                files == null ? new TreeMap<String, String>()
+                : new TreeMap<String, String>(files));
+        }
+
+        /** Returns the id of this commit. */
+        public String id() {
+            return _id;
+        }
+
+        /** Returns the message of this commit. */
+        public String message() {
+            return _message;
+        }
+
+        /** Returns the time this commit was made, as log shows it. */
+        public String timestamp() {
+            return _timestamp;
+        }
+
+        /** Returns the ids of the parents of this commit, the first
+         * first; none for the initial commit or where history was cut
+         * off by a shallow clone. */
+        public List<String> parents() {
+            return _parents;
+        }
+
+        /** Returns the files of this commit, mapped to their blob ids. */
+        public SortedMap<String, String> files() {
+            return _files;
+        }
+
+        /** Id. */
+        private final String _id;
+
+        /** Message and timestamp. */
+        private final String _message, _timestamp;
+
+        /** Parent ids. */
+        private final List<String> _parents;
+
+        /** Files, mapped to blob ids. */
+        private final SortedMap<String, String> _files;
+    }
+
+    /** A file that differs between two commits. */
+    public static final class Change {
+
+        /** The file NAME, held in blob BEFORE in the first commit and
+         * in blob AFTER in the second, either null if it is absent. */
+        Change(String name, String before, String after) {
+            _name = name;
+            _before = before;
+            _after = after;
+        }
+
+        /** Returns the name of the file. */
+        public String name() {
+            return _name;
+        }
+
+        /** Returns the id of the blob in the first commit, or null if
+         * the file was added. */
+        public String before() {
+            return _before;
+        }
+
+        /** Returns the id of the blob in the second commit, or null if
+         * the file was removed. */
+        public String after() {
+            return _after;
+        }
+
+        /** Name and blob ids. */
+        private final String _name, _before, _after;
+    }
+
+    /** Current branch and its head. */
+    private final String _branch, _head;
+
+    /** Branches and tags. */
+    private final SortedMap<String, String> _branches, _tags;
+
+    /** Commits whose parents were cut off by a shallow clone. */
+    private final Set<String> _shallow;
+
+    /** Blobs left behind by a partial clone. */
+    private final Set<String> _promised;
+
+    /** Where commits and blobs are read from. */
+    private final ObjectStore _store;
+
+    /** True iff large files may be in the repository's large-object
+     * store rather than its blobs. */
+    private final boolean _inPlace;
+}
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** A snapshot of uncommitted work: the staging area, the files staged
+ * for removal, and the changes to working files that were not staged.
+ * File contents are kept as ordinary blobs, so a snapshot costs one
+ * blob per changed file that is not already stored, plus this record,
+ * which is itself stored under the hash of its contents in the
+ * stash directory that all working directories share, or, for a
+ * repository not in a .gitlet directory, in the repository itself. Each record
+ * carries a stamp making it unlike every other stored, so two
+ * snapshots of the same work are two entries, and dropping one
+ * leaves the other.
+ * @author Max Miranda */
+class Stash implements Serializable {
+
+    /** A snapshot with description MESSAGE of work on branch BRANCH,
+     * whose head was BASE, consisting of the staged files STAGED, the
+     * files REMOVED from tracking, and the working files CHANGED (names
+     * to blob ids) and DELETED. */
+    Stash(String message, String branch, String base,
+          HashMap<String, String> staged, ArrayList<String> removed,
+          HashMap<String, String> changed, ArrayList<String> deleted) {
+        _message = message;
+        _branch = branch;
+        _base = base;
+        _staged = staged;
+        _removed = removed;
+        _changed = changed;
+        _deleted = deleted;
+    }
+
+    /** Returns the snapshot stored under ID. */
+    static Stash read(String id) {
+        return Utils.readObject(new File(dir(), id), Stash.class);
+    }
+
+    /** Stores this snapshot under an id no other stored snapshot has,
+     * and returns the id. */
+    String write() {
+        dir().mkdirs();
+        _stamp = System.currentTimeMillis();
+        while (true) {
+            byte[] contents = Utils.serialize(this);
+            String id = Hashing.hash(contents);
+            File f = new File(dir(), id);
+            if (!f.exists()) {
+                Utils.writeContents(f, contents);
+                return id;
+            }
+            _stamp += 1;
+        }
+    }
+
+    /** Stores this snapshot in STASHED, which maps ids to snapshots,
+     * under an id no snapshot there has, and returns the id. Used by a
+     * repository that is not in a .gitlet directory. */
+    String write(Map<String, Stash> stashed) {
+        _stamp = System.currentTimeMillis();
+        while (true) {
+            String id = Hashing.hash(Utils.serialize(this));
+            if (!stashed.containsKey(id)) {
+                stashed.put(id, this);
+                return id;
+            }
+            _stamp += 1;
+        }
+    }
+
+    /** Removes the snapshot stored under ID. */
+    static void delete(String id) {
+        new File(dir(), id).delete();
+    }
+
+    /** Returns the description of this snapshot. */
+    String getMessage() {
+        return _message;
+    }
+
+    /** Returns the branch this snapshot was taken on. */
+    String getBranch() {
+        return _branch;
+    }
+
+    /** Returns the commit this snapshot was taken on top of. */
+    String getBase() {
+        return _base;
+    }
+
+    /** Points this snapshot at the new id of its base commit, if
+     * RENAMES, which maps old commit ids to new ones, renames it.
+     * Returns true iff that changed anything. */
+    boolean rename(Map<String, String> renames) {
+        String base = renames.getOrDefault(_base, _base);
+        if (base.equals(_base)) {
+            return false;
+        }
+        _base = base;
+        return true;
+    }
+
+    /** Returns the staged files, mapped to their blobs. */
+    HashMap<String, String> getStaged() {
+        return _staged;
+    }
+
+    /** Returns the files that were staged for removal. */
+    ArrayList<String> getRemoved() {
+        return _removed;
+    }
+
+    /** Returns the working files with unstaged changes, mapped to the
+     * blobs of their contents. */
+    HashMap<String, String> getChanged() {
+        return _changed;
+    }
+
+    /** Returns the tracked files that were missing from the working
+     * directory. */
+    ArrayList<String> getDeleted() {
+        return _deleted;
+    }
+
+    /** Returns the names of every file this snapshot touches. */
+    Set<String> names() {
+        Set<String> result = new HashSet<String>(_staged.keySet());
+        result.addAll(_removed);
+        result.addAll(_changed.keySet());
+        result.addAll(_deleted);
+        return result;
+    }
+
+    /** Returns the ids of every blob this snapshot refers to. */
+    Set<String> blobs() {
+        Set<String> result = new HashSet<String>(_staged.values());
+        result.addAll(_changed.values());
+        return result;
+    }
+
+    /** Returns the directory holding stored snapshots. */
+    private static File dir() {
+        return new File(Worktree.common(), "stash");
+    }
+
+    /** Pinned so that stored snapshots survive changes to this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** Description. */
+    private final String _message;
+
+    /** Branch the work was on. */
+    private final String _branch;
+
+    /** Head commit the work was on top of. */
+    private String _base;
+
+    /** Staged files and their blobs. */
+    private final HashMap<String, String> _staged;
+
+    /** Files staged for removal. */
+    private final ArrayList<String> _removed;
+
+    /** Working files with unstaged changes, and their blobs. */
+    private final HashMap<String, String> _changed;
+
+    /** Tracked files missing from the working directory. */
+    private final ArrayList<String> _deleted;
+
+    /** When this snapshot was stored, in milliseconds, or later if
+     * another identical one was stored in the same millisecond. */
+    private long _stamp;
+}
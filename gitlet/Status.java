@@ -0,0 +1,118 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** The state of a working directory relative to its current commit
+ * and staging area, as reported by the status command. A Status does
+ * not change once made.
+ * @author Max Miranda */
+public final class Status {
+
+    /** A status in which CURRENT is the current branch of BRANCHES, the
+     * files STAGED and REMOVED are staged for addition and removal,
+     * MODIFIED and DELETED have unstaged changes, and UNTRACKED are
+     * neither staged nor tracked. */
+    Status(String current, Collection<String> branches,
+           Collection<String> staged, Collection<String> removed,
+           Collection<String> modified, Collection<String> deleted,
+           Collection<String> untracked) {
+        _current = current;
+        _branches = frozen(branches);
+        _staged = frozen(staged);
+        _removed = frozen(removed);
+        _modified = frozen(modified);
+        _deleted = frozen(deleted);
+        _untracked = frozen(untracked);
+    }
+
+    /** Returns the name of the current branch. */
+    public String currentBranch() {
+        return _current;
+    }
+
+    /** Returns the names of the branches. */
+    public SortedSet<String> branches() {
+        return _branches;
+    }
+
+    /** Returns the files staged for addition. */
+    public SortedSet<String> staged() {
+        return _staged;
+    }
+
+    /** Returns the files staged for removal. */
+    public SortedSet<String> removed() {
+        return _removed;
+    }
+
+    /** Returns the files changed but not staged. */
+    public SortedSet<String> modified() {
+        return _modified;
+    }
+
+    /** Returns the files deleted but not staged for removal. */
+    public SortedSet<String> deleted() {
+        return _deleted;
+    }
+
+    /** Returns the files neither staged nor tracked. */
+    public SortedSet<String> untracked() {
+        return _untracked;
+    }
+
+    /** Returns true iff nothing is staged and no working file differs
+     * from the current commit. */
+    public boolean isClean() {
+        return _staged.isEmpty() && _removed.isEmpty()
+            && _modified.isEmpty() && _deleted.isEmpty()
+            && _untracked.isEmpty();
+    }
+
+    /** Prints this status to OUT as the status command shows it. */
+    void print(PrintStream out) {
+        out.println("=== Branches ===");
+        for (String branch : _branches) {
+            out.println(branch.equals(_current) ? "*" + branch : branch);
+        }
+        section(out, "Staged Files", _staged);
+        section(out, "Removed Files", _removed);
+        TreeSet<String> changes = new TreeSet<String>();
+        for (String name : _modified) {
+            changes.add(name + " (modified)");
+        }
+        for (String name : _deleted) {
+            changes.add(name + " (deleted)");
+        }
+        section(out, "Modifications Not Staged For Commit", changes);
+        section(out, "Untracked Files", _untracked);
+        out.println();
+    }
+
+    /** Prints to OUT a blank line, then a section headed TITLE listing
+     * NAMES. */
+    private static void section(PrintStream out, String title,
+                                Collection<String> names) {
+        out.println();
+        out.println("=== " + title + " ===");
+        for (String name : names) {
+            out.println(name);
+        }
+    }
+
+    /** Returns an unmodifiable sorted copy of NAMES. */
+    private static SortedSet<String> frozen(Collection<String> names) {
+        return Collections.unmodifiableSortedSet(new TreeSet<String>(names));
+    }
+
+    /** Current branch. */
+    private final String _current;
+
+    /** Names of the branches, files staged for addition and removal,
+     * changed and deleted files, and untracked files. */
+    private final SortedSet<String> _branches, _staged, _removed,
+        _modified, _deleted, _untracked;
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Date;
+
+/** An annotated tag: a name, a message and a date attached to a
+ * commit. Lightweight tags are just references to commits; an
+ * annotated tag's reference names one of these instead, stored under
+ * the hash of its contents in .gitlet/tags.
+ * @author Max Miranda */
+class Tag implements Serializable {
+
+    /** A tag called NAME on the commit TARGET, with message MESSAGE. */
+    Tag(String name, String target, String message) {
+        _name = name;
+        _target = target;
+        _message = message;
+        _timestamp = Commit.DATE_FORMAT.format(new Date()) + " -0800";
+    }
+
+    /** Returns the tag stored under ID in the .gitlet directory DIR, or
+     * null if ID is not a tag. */
+    static Tag read(File dir, String id) {
+        File f = new File(new File(dir, DIR), id);
+        return f.isFile() ? Utils.readObject(f, Tag.class) : null;
+    }
+
+    /** Stores this tag in the .gitlet directory DIR and returns its
+     * id. */
+    String write(File dir) {
+        byte[] contents = Utils.serialize(this);
+        String id = Hashing.hash(contents);
+        File tags = new File(dir, DIR);
+        tags.mkdirs();
+        Utils.writeContents(new File(tags, id), contents);
+        return id;
+    }
+
+    /** Returns the name this tag was created with. */
+    String getName() {
+        return _name;
+    }
+
+    /** Returns the id of the tagged commit. */
+    String getTarget() {
+        return _target;
+    }
+
+    /** Returns the tag message. */
+    String getMessage() {
+        return _message;
+    }
+
+    /** Returns when the tag was made. */
+    String getTimestamp() {
+        return _timestamp;
+    }
+
+    /** Directory, within .gitlet, holding tags. */
+    private static final String DIR = "tags";
+
+    /** Pinned so that stored tags survive changes to this class. */
+    private static final long serialVersionUID = 1L;
+
+    /** Name. */
+    private final String _name;
+
+    /** Tagged commit. */
+    private final String _target;
+
+    /** Message. */
+    private final String _message;
+
+    /** Creation date. */
+    private final String _timestamp;
+}
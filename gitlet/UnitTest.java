@@ -4,6 +4,27 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeSet;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +41,490 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Hashes of known values. */
+    @Test
+    public void hashTest() {
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                     Utils.sha1("abc"));
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+                     Utils.sha1("a", "bc".getBytes()));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223"
+                     + "b00361a396177a9cb410ff61f20015ad",
+                     Hashing.hash(Hashing.SHA256, "abc"));
+        assertEquals(Utils.sha1("abc"),
+                     Hashing.hash(Hashing.SHA1,
+                                  ByteBuffer.wrap("abc".getBytes())));
+    }
+
+    /** A commit id is the hash of its fields encoded as UTF-8, each
+     * followed by a NUL, with files sorted by name, however long the
+     * fields or many the files. */
+    @Test
+    public void commitHashTest() {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 300; i += 1) {
+            message.append("\u00e9\u4e2d\ud83d\ude00x");
+        }
+        HashMap<String, String> files = new HashMap<String, String>();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 600; i += 1) {
+            files.put("f" + i, Integer.toString(i));
+            names.add("f" + i);
+        }
+        Collections.sort(names);
+        String[] parents = {"p1", "p2"};
+        Commit comm = new Commit(message.toString(), files, parents,
+                                 "Wed Dec 31 16:00:00 1969 -0800");
+        List<Object> fields = new ArrayList<Object>();
+        fields.addAll(Arrays.asList("commit", message.toString(),
+                                    comm.getTimestamp(), "parent", "p1",
+                                    "parent", "p2"));
+        for (String name : names) {
+            fields.addAll(Arrays.asList("file", name, files.get(name)));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object field : fields) {
+            bytes.writeBytes(((String) field)
+                             .getBytes(StandardCharsets.UTF_8));
+            bytes.write(0);
+        }
+        assertEquals(Hashing.hash(bytes.toByteArray()),
+                     comm.hashCommit());
+        assertEquals(comm.hashCommit(), comm.hashCommit());
+    }
+
+    /** The hex encoder agrees with Formatter. */
+    @Test
+    public void hexTest() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i += 1) {
+            bytes[i] = (byte) i;
+        }
+        Formatter expected = new Formatter();
+        for (byte b : bytes) {
+            expected.format("%02x", b);
+        }
+        assertEquals(expected.toString(), Hashing.toHex(bytes));
+    }
+
+    /** Hashing a file, whether read or mapped, agrees with hashing
+     * its contents. */
+    @Test
+    public void hashFileTest() throws IOException {
+        Random random = new Random(61);
+        for (int size : new int[] {0, 100, 3 << 20}) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            File f = File.createTempFile("gitlet", "blob");
+            try {
+                Files.write(f.toPath(), contents);
+                assertEquals(Utils.sha1(contents), Hashing.hashFile(f));
+            } finally {
+                f.delete();
+            }
+        }
+    }
+
+    /** Line diffs keep a longest common subsequence of the lines. */
+    @Test
+    public void diffTest() {
+        List<String> a = Arrays.asList("a", "b", "c", "a", "b", "b", "a");
+        List<String> b = Arrays.asList("c", "b", "a", "b", "a", "c");
+        int[] match = Diff.match(a, b);
+        int kept = 0, last = -1;
+        for (int j = 0; j < match.length; j += 1) {
+            if (match[j] >= 0) {
+                assertTrue(match[j] > last);
+                assertEquals(a.get(match[j]), b.get(j));
+                last = match[j];
+                kept += 1;
+            }
+        }
+        assertEquals(4, kept);
+        assertArrayEquals(new int[] {-1, -1},
+                          Diff.match(Arrays.asList(), b.subList(0, 2)));
+    }
+
+    /** Three-way merges of trees take one-sided changes and flag
+     * changes made on both sides. */
+    @Test
+    public void mergeTreesTest() {
+        HashMap<String, String> base = new HashMap<String, String>();
+        base.put("same", "1");
+        base.put("ours", "1");
+        base.put("theirs", "1");
+        base.put("both", "1");
+        base.put("gone", "1");
+        HashMap<String, String> ours = new HashMap<String, String>(base);
+        ours.put("ours", "2");
+        ours.put("both", "2");
+        ours.put("mine", "3");
+        HashMap<String, String> theirs = new HashMap<String, String>(base);
+        theirs.put("theirs", "2");
+        theirs.put("both", "3");
+        theirs.remove("gone");
+        Set<String> conflicts = new TreeSet<String>();
+        HashMap<String, String> merged =
+            Repo.mergeTrees(base, ours, theirs, conflicts);
+        assertEquals(Collections.singleton("both"), conflicts);
+        assertEquals("1", merged.get("same"));
+        assertEquals("2", merged.get("ours"));
+        assertEquals("2", merged.get("theirs"));
+        assertEquals("3", merged.get("mine"));
+        assertFalse(merged.containsKey("gone"));
+    }
+
+    /** A command that fails after changing references puts them
+     * back, along with the rest of the repository. Each reference in
+     * FAILING fails once, just after it is written. */
+    @Test
+    public void refsRollbackTest() {
+        Set<String> failing = new TreeSet<String>();
+        MemoryStore store = new MemoryStore() {
+            @Override
+            public References refs() {
+                References refs = super.refs();
+                return new References() {
+                    @Override
+                    public String resolve(String name) {
+                        return refs.resolve(name);
+                    }
+                    @Override
+                    public void update(String name, String id) {
+                        refs.update(name, id);
+                        if (failing.remove(name)) {
+                            throw new IllegalStateException(name);
+                        }
+                    }
+                    @Override
+                    public void delete(String name) {
+                        refs.delete(name);
+                    }
+                    @Override
+                    public SortedMap<String, String> list(String prefix) {
+                        return refs.list(prefix);
+                    }
+                    @Override
+                    public void replace(Map<String, String> map) {
+                        refs.replace(map);
+                    }
+                    @Override
+                    public void pack() {
+                    }
+                };
+            }
+        };
+        MemoryWorkingTree work = new MemoryWorkingTree();
+        Gitlet gitlet = Gitlet.create(store, work, Hashing.SHA1);
+        String initial = gitlet.snapshot().head();
+        work.write("f.txt", "v1");
+        gitlet.add("f.txt");
+        failing.add(Refs.HEADS + "master");
+        failing.add(Refs.HEADS + "other");
+        try {
+            gitlet.run("commit", "one");
+            fail();
+        } catch (IllegalStateException excp) {
+            assertEquals(initial, store.refs().resolve(Refs.HEADS
+                                                       + "master"));
+        }
+        try {
+            gitlet.run("branch", "other");
+            fail();
+        } catch (IllegalStateException excp) {
+            assertNull(store.refs().resolve(Refs.HEADS + "other"));
+        }
+        assertEquals(Collections.singleton("f.txt"),
+                     gitlet.status().staged());
+        gitlet.run("commit", "one");
+        assertFalse(initial.equals(gitlet.snapshot().head()));
+    }
+
+    /** Loose references override packed ones until they are packed. */
+    @Test
+    public void refsTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            Refs refs = new Refs(dir);
+            HashMap<String, String> packed = new HashMap<String, String>();
+            for (int i = 0; i < 100; i += 1) {
+                packed.put(Refs.HEADS + "b" + i, "id" + i);
+            }
+            packed.put(Refs.TAGS + "v1", "t1");
+            refs.replace(packed);
+            assertEquals("id42", refs.resolve(Refs.HEADS + "b42"));
+            assertNull(refs.resolve(Refs.HEADS + "b100"));
+            refs.update(Refs.HEADS + "b42", "new");
+            refs.update(Refs.HEADS + "a/b", "slash");
+            refs.delete(Refs.HEADS + "b7");
+            assertEquals("new", refs.resolve(Refs.HEADS + "b42"));
+            assertNull(refs.resolve(Refs.HEADS + "b7"));
+            assertEquals(11, refs.list(Refs.HEADS + "b4").size());
+            assertEquals("slash", refs.list(Refs.HEADS).get("a/b"));
+            assertEquals(100, refs.list(Refs.HEADS).size());
+            assertEquals(Collections.singletonMap("v1", "t1"),
+                         refs.list(Refs.TAGS));
+            refs.pack();
+            assertEquals("new", refs.resolve(Refs.HEADS + "b42"));
+            assertNull(refs.resolve(Refs.HEADS + "b7"));
+            assertEquals(100, refs.list(Refs.HEADS).size());
+        } finally {
+            for (File f : Files.walk(dir.toPath()).map(p -> p.toFile())
+                     .sorted(Collections.reverseOrder())
+                     .toArray(File[]::new)) {
+                f.delete();
+            }
+        }
+    }
 
+    /** A pack is stored only if every object in it is named by a proper
+     * id that its contents hash to. */
+    @Test
+    public void packCheckTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            new File(dir, "staging").mkdir();
+            new File(dir, "commits").mkdir();
+            byte[] hello = "hello".getBytes(StandardCharsets.UTF_8);
+            String id = Hashing.hash(hello);
+            String other = Hashing.hash(new byte[] {1});
+            for (String bad : new String[] {"../../evil", other}) {
+                try {
+                    Pack.read(pack(id, hello, bad, hello), dir);
+                    fail();
+                } catch (GitletException excp) {
+                    assertEquals("The remote sent a corrupt object.",
+                                 excp.getMessage());
+                }
+                assertEquals(0, new File(dir, "staging").list().length);
+            }
+            assertEquals(1, Pack.read(pack(id, hello), dir));
+            assertArrayEquals(hello, Utils.readContents(
+                new File(dir, "staging/" + id)));
+        } finally {
+            for (File f : Files.walk(dir.toPath()).map(p -> p.toFile())
+                     .sorted(Collections.reverseOrder())
+                     .toArray(File[]::new)) {
+                f.delete();
+            }
+        }
+    }
+
+    /** Returns a pack of blobs, given as alternating ids and contents
+     * in OBJECTS. */
+    private static ByteArrayInputStream pack(Object... objects)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Pack.MAGIC);
+        out.writeInt(objects.length / 2);
+        for (int i = 0; i < objects.length; i += 2) {
+            byte[] contents = (byte[]) objects[i + 1];
+            out.writeByte(Pack.BLOB);
+            out.writeUTF((String) objects[i]);
+            out.writeLong(contents.length);
+            out.write(contents);
+        }
+        return new ByteArrayInputStream(bytes.toByteArray());
+    }
+
+    /** A failure while reading blobs ahead reaches the caller instead
+     * of leaving it waiting. */
+    @Test
+    public void prefetchFailureTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            BlobPrefetcher.materialize(
+                Collections.singletonMap("f.txt", (String) null), dir);
+            fail();
+        } catch (NullPointerException excp) {
+            assertFalse(new File(dir, "f.txt").exists());
+        } finally {
+            dir.delete();
+        }
+    }
+
+    /** Changed-path filters hold what was put in them, and little
+     * else. */
+    @Test
+    public void bloomTest() {
+        assertEquals(0x248bfa47, CommitGraph.murmur3(0,
+            "hello".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x2fa826cd, CommitGraph.murmur3(0x9747b28c,
+            "The quick brown fox jumps over the lazy dog"
+            .getBytes(StandardCharsets.UTF_8)));
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 100; i += 1) {
+            paths.add("dir/file" + i + ".txt");
+        }
+        long[] filter = CommitGraph.filter(paths);
+        for (String path : paths) {
+            assertTrue(CommitGraph.contains(filter, path));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i += 1) {
+            if (CommitGraph.contains(filter, "other" + i)) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 200);
+        assertFalse(CommitGraph.contains(CommitGraph.filter(
+            new ArrayList<String>()), "anything"));
+        assertNull(CommitGraph.filter(Collections.nCopies(1000, "x")));
+    }
+
+    /** A status reports what it was given, prints as the status
+     * command does, and cannot be changed. */
+    @Test
+    public void statusTest() {
+        Status status = new Status("master",
+            Arrays.asList("other", "master"), Arrays.asList("b.txt"),
+            new ArrayList<String>(), Arrays.asList("c.txt"),
+            Arrays.asList("a.txt"), Arrays.asList("d.txt"));
+        assertFalse(status.isClean());
+        assertEquals("[master, other]", status.branches().toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        status.print(new PrintStream(bytes, true));
+        assertEquals("=== Branches ===\n*master\nother\n\n"
+                     + "=== Staged Files ===\nb.txt\n\n"
+                     + "=== Removed Files ===\n\n"
+                     + "=== Modifications Not Staged For Commit ===\n"
+                     + "a.txt (deleted)\nc.txt (modified)\n\n"
+                     + "=== Untracked Files ===\nd.txt\n\n",
+                     bytes.toString().replace(System.lineSeparator(),
+                                              "\n"));
+        try {
+            status.staged().add("e.txt");
+            fail();
+        } catch (UnsupportedOperationException excp) {
+            assertEquals(1, status.staged().size());
+        }
+    }
 
+    /** Repositories held in memory work side by side without touching
+     * the current directory, and a failed command changes nothing. */
+    @Test
+    public void memoryRepoTest() {
+        Gitlet one = Gitlet.inMemory(), two = Gitlet.inMemory();
+        MemoryWorkingTree work = (MemoryWorkingTree) one.work();
+        work.write("f.txt", "base\n");
+        one.add("f.txt");
+        String base = one.commit("base");
+        one.branch("other");
+        work.write("f.txt", "ours\n");
+        one.add("f.txt");
+        one.commit("ours");
+        one.checkout("other");
+        assertEquals("base\n", new String(work.read("f.txt"),
+                                           StandardCharsets.UTF_8));
+        work.write("f.txt", "theirs\n");
+        one.add("f.txt");
+        one.commit("theirs");
+        one.checkout("master");
+        one.merge("other");
+        assertEquals("<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\n",
+                     new String(work.read("f.txt"), StandardCharsets.UTF_8));
+        assertTrue(one.status().isClean());
+        Snapshot snap = one.snapshot();
+        assertEquals(2, snap.commit(snap.head()).parents().size());
+        assertArrayEquals(work.read("f.txt"), snap.read("f.txt"));
+        assertEquals(base, snap.log(snap.commit(base).id())
+                     .iterator().next().id());
+
+        try {
+            one.run("rm-branch", "master");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals("Cannot remove the current branch.",
+                         excp.getMessage());
+        }
+        one.run("sparse-checkout", "set", "g*");
+        assertFalse(work.exists("f.txt"));
+        one.run("sparse-checkout", "disable");
+        assertArrayEquals(snap.read("f.txt"), work.read("f.txt"));
+        work.write("f.txt", "stashed\n");
+        one.run("stash");
+        assertArrayEquals(snap.read("f.txt"), work.read("f.txt"));
+        one.run("stash", "pop");
+        assertEquals("stashed\n", new String(work.read("f.txt"),
+                                              StandardCharsets.UTF_8));
+        try {
+            one.run("fsck");
+            fail();
+        } catch (GitletException excp) {
+            assertEquals(Repo.ON_DISK, excp.getMessage());
+        }
+        assertTrue(one.snapshot().branches().containsKey("other"));
+        assertEquals(Collections.singleton("master"),
+                     two.snapshot().branches().keySet());
+        assertTrue(two.work().files().isEmpty());
+    }
+
+    /** A pack store reads what was packed, through a mapping, and sends
+     * new objects and references to its overlay. */
+    @Test
+    public void packStoreTest() throws IOException {
+        MemoryStore source = new MemoryStore();
+        Gitlet gitlet = Gitlet.create(source, new MemoryWorkingTree(),
+                                      Hashing.SHA1);
+        MemoryWorkingTree work = (MemoryWorkingTree) gitlet.work();
+        work.write("a.txt", "a");
+        gitlet.add("a.txt");
+        String head = gitlet.commit("a");
+        File pack = File.createTempFile("gitlet", ".pack");
+        try {
+            PackStore.create(pack, source);
+            MemoryStore overlay = new MemoryStore();
+            overlay.refs().replace(Collections.singletonMap(
+                Refs.HEADS + "master", head));
+            PackStore store = new PackStore(pack, overlay);
+            assertEquals(source.list(ObjectStore.Kind.COMMIT),
+                         store.list(ObjectStore.Kind.COMMIT));
+            String blob = Hashing.hash("a".getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals("a".getBytes(StandardCharsets.UTF_8),
+                              store.read(ObjectStore.Kind.BLOB, blob));
+            assertNull(store.read(ObjectStore.Kind.BLOB, "0" + blob));
+
+            Gitlet reopened = Gitlet.open(store, new MemoryWorkingTree(),
+                                          Hashing.SHA1, "master");
+            reopened.run("reset", head);
+            MemoryWorkingTree files = (MemoryWorkingTree) reopened.work();
+            files.write("b.txt", "b");
+            reopened.add("b.txt");
+            String next = reopened.commit("b");
+            assertTrue(overlay.has(ObjectStore.Kind.COMMIT, next));
+            assertFalse(overlay.has(ObjectStore.Kind.BLOB, blob));
+            assertEquals(next, overlay.refs().resolve(Refs.HEADS + "master"));
+        } finally {
+            pack.delete();
+        }
+    }
+
+    /** Repositories with different hash algorithms can be used side
+     * by side, each naming its objects by its own. */
+    @Test
+    public void mixedAlgorithmTest() {
+        Gitlet one = Gitlet.inMemory();
+        Gitlet two = Gitlet.create(new MemoryStore(),
+                                   new MemoryWorkingTree(), Hashing.SHA256);
+        List<Gitlet> order = Arrays.asList(one, two, one);
+        for (int i = 0; i < order.size(); i += 1) {
+            MemoryWorkingTree work = (MemoryWorkingTree) order.get(i).work();
+            work.write("f.txt", "v" + i);
+            order.get(i).add("f.txt");
+            order.get(i).commit("commit " + i);
+        }
+        assertEquals(Hashing.hash(Hashing.SHA1, "v2"),
+                     one.snapshot().files().get("f.txt"));
+        assertEquals(Hashing.hash(Hashing.SHA256, "v1"),
+                     two.snapshot().files().get("f.txt"));
+        for (Snapshot.CommitInfo info : one.snapshot().log()) {
+            assertEquals(40, info.id().length());
+        }
+        for (Snapshot.CommitInfo info : two.snapshot().log()) {
+            assertEquals(64, info.id().length());
+        }
+        assertEquals(Hashing.SHA1, Hashing.algorithm());
+    }
+
+}
@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** A long-lived process that watches the working directory and keeps
+ * a list of the paths that changed since they were last seen clean,
+ * so that other commands can look at those paths alone instead of
+ * the whole working directory.
+ *
+ * The watcher owns .gitlet/dirty, which holds one "SEQ NAME" line per
+ * dirty path, SEQ being the number of the latest event for NAME. A
+ * command that finds some of those paths clean writes them, along
+ * with the largest SEQ it read, to .gitlet/dirty-ack; the watcher
+ * then forgets each of them unless it has seen a newer event for it.
+ *
+ * Events reach the watcher a little after the changes they report, so
+ * before reading the dirty paths a command creates a cookie file in
+ * the working directory and waits until the watcher lists it in
+ * .gitlet/dirty, as a "+ NAME" line: every change made before the
+ * cookie is then listed too. A command that waits in vain falls back
+ * to looking at every file.
+ * @author Max Miranda */
+class Watcher {
+
+    /** Watches the working directory until the process is killed or
+     * stopped with stop(). */
+    static void run() {
+        if (dirtyPaths() != null) {
+            throw Utils.error("A watcher is already running.");
+        }
+        Path pwd = new File(System.getProperty("user.dir")).toPath();
+        try (WatchService service = FileSystems.getDefault()
+                                                .newWatchService()) {
+            pwd.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_DELETE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+            Watcher watcher = new Watcher();
+            watcher.rescan();
+            Utils.writeContents(PID, Long.toString(ProcessHandle.current()
+                                                   .pid()));
+            Runtime.getRuntime().addShutdownHook(new Thread(PID::delete));
+            while (true) {
+                WatchKey key = service.poll(POLL, TimeUnit.MILLISECONDS);
+                boolean changed = false;
+                if (key != null) {
+                    changed = watcher.record(key.pollEvents());
+                    key.reset();
+                }
+                changed |= watcher.prune();
+                if (changed) {
+                    watcher.save();
+                }
+            }
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stops the running watcher, if any. */
+    static void stop() {
+        Long pid = livePid();
+        if (pid != null) {
+            ProcessHandle.of(pid).ifPresent(ProcessHandle::destroy);
+        }
+    }
+
+    /** Returns the names of the working files that may have changed
+     * since they were last seen clean, or null if no watcher is
+     * running or it did not catch up in time, in which case the caller
+     * must look at every file. */
+    static List<String> dirtyPaths() {
+        if (livePid() == null || !DIRTY.exists()) {
+            return null;
+        }
+        String contents = sync();
+        if (contents == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>();
+        _seen = 0;
+        for (String line : contents.split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0 && !line.startsWith("+ ")) {
+                _seen = Math.max(_seen,
+                                 Long.parseLong(line.substring(0, space)));
+                names.add(line.substring(space + 1));
+            }
+        }
+        return names;
+    }
+
+    /** Creates a cookie file and waits for the watcher to record it.
+     * Returns the contents of the dirty file once it lists the cookie,
+     * or null if it did not within SYNC milliseconds. */
+    private static String sync() {
+        _cookies += 1;
+        String name = COOKIE + ProcessHandle.current().pid() + "-" + _cookies;
+        File cookie = new File(name);
+        Utils.writeContents(cookie, "");
+        try {
+            long deadline = System.currentTimeMillis() + SYNC;
+            while (System.currentTimeMillis() < deadline) {
+                String contents = Utils.readContentsAsString(DIRTY);
+                if (contents.contains("+ " + name + "\n")) {
+                    return contents;
+                }
+                Thread.sleep(1);
+            }
+            return null;
+        } catch (InterruptedException excp) {
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** Tells the watcher that the paths CLEAN, all taken from the last
+     * call to dirtyPaths, were found clean. */
+    static void acknowledge(Collection<String> clean) {
+        if (clean.isEmpty()) {
+            return;
+        }
+        StringBuilder ack = new StringBuilder();
+        ack.append(_seen).append('\n');
+        for (String name : clean) {
+            ack.append(name).append('\n');
+        }
+        writeAtomically(ACK, ack.toString());
+    }
+
+    /** Returns the pid of the running watcher, or null. */
+    private static Long livePid() {
+        if (!PID.exists()) {
+            return null;
+        }
+        long pid = Long.parseLong(Utils.readContentsAsString(PID).trim());
+        boolean alive = ProcessHandle.of(pid).map(ProcessHandle::isAlive)
+                                     .orElse(false);
+        return alive ? pid : null;
+    }
+
+    /** Marks every file in the working directory dirty. Used at start
+     * up, when nothing is known, and when events were lost. */
+    private void rescan() {
+        File pwd = new File(System.getProperty("user.dir"));
+        for (File file : pwd.listFiles()) {
+            mark(file.getName());
+        }
+        save();
+    }
+
+    /** Marks the paths named by EVENTS dirty. Returns true iff that
+     * changed anything. */
+    private boolean record(List<WatchEvent<?>> events) {
+        for (WatchEvent<?> event : events) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan();
+            } else {
+                String name = event.context().toString();
+                if (!name.startsWith(COOKIE)) {
+                    mark(name);
+                } else if (event.kind()
+                           == StandardWatchEventKinds.ENTRY_DELETE) {
+                    _synced.remove(name);
+                } else {
+                    _synced.add(name);
+                }
+            }
+        }
+        return !events.isEmpty();
+    }
+
+    /** Marks the path NAME dirty, unless it is the repository or a
+     * cookie. */
+    private void mark(String name) {
+        if (!name.equals(".gitlet") && !name.startsWith(COOKIE)) {
+            _seq += 1;
+            _dirty.remove(name);
+            _dirty.put(name, _seq);
+        }
+    }
+
+    /** Forgets the paths acknowledged as clean since the last call.
+     * Returns true iff that changed anything. */
+    private boolean prune() {
+        if (!ACK.exists()) {
+            return false;
+        }
+        String[] lines = Utils.readContentsAsString(ACK).split("\n");
+        ACK.delete();
+        long upTo = Long.parseLong(lines[0]);
+        boolean changed = false;
+        for (int i = 1; i < lines.length; i += 1) {
+            Long seq = _dirty.get(lines[i]);
+            if (seq != null && seq <= upTo) {
+                _dirty.remove(lines[i]);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Writes out the cookies seen and the dirty paths. */
+    private void save() {
+        StringBuilder out = new StringBuilder();
+        for (String name : _synced) {
+            out.append("+ ").append(name).append('\n');
+        }
+        for (Map.Entry<String, Long> e : _dirty.entrySet()) {
+            out.append(e.getValue()).append(' ').append(e.getKey())
+               .append('\n');
+        }
+        writeAtomically(DIRTY, out.toString());
+    }
+
+    /** Replaces the contents of FILE by CONTENTS in one step, so that
+     * a reader never sees a partial file. */
+    private static void writeAtomically(File file, String contents) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(tmp, contents);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Dirty paths, with the number of the latest event for each, in
+     * the order they were last touched. */
+    private final LinkedHashMap<String, Long> _dirty =
+        new LinkedHashMap<String, Long>();
+
+    /** Cookies created and not yet deleted. */
+    private final LinkedHashSet<String> _synced = new LinkedHashSet<String>();
+
+    /** Number of the latest event. */
+    private long _seq;
+
+    /** Largest event number read by the last call to dirtyPaths. */
+    private static long _seen;
+
+    /** Number of cookies this process created. */
+    private static int _cookies;
+
+    /** Prefix of the names of cookie files. */
+    static final String COOKIE = ".gitlet-sync-";
+
+    /** Holds the pid of the running watcher. */
+    private static final File PID = new File(".gitlet/watcher");
+
+    /** Holds the dirty paths. */
+    private static final File DIRTY = new File(".gitlet/dirty");
+
+    /** Holds paths found clean, for the watcher to forget. */
+    private static final File ACK = new File(".gitlet/dirty-ack");
+
+    /** Milliseconds to wait for events before checking for acks. */
+    private static final long POLL = 200;
+
+    /** Milliseconds to wait for the watcher to record a cookie. */
+    private static final long SYNC = 2000;
+}
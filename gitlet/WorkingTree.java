@@ -0,0 +1,39 @@
+package gitlet;
+
+import java.util.List;
+
+/** The files a repository is checked out into: a directory on disk,
+ * as FileWorkingTree, or a map on the heap, as MemoryWorkingTree.
+ * Only plain files directly in the tree are seen.
+ * @author Max Miranda */
+public interface WorkingTree {
+
+    /** Returns the names of the files, in order. */
+    List<String> files();
+
+    /** Returns true iff there is a file NAME. */
+    boolean exists(String name);
+
+    /** Returns the length in bytes of the file NAME. */
+    long length(String name);
+
+    /** Returns the time the file NAME was last written, in
+     * milliseconds since the epoch. */
+    long lastModified(String name);
+
+    /** Returns the contents of the file NAME. */
+    byte[] read(String name);
+
+    /** Returns the id the contents of the file NAME would have as a
+     * blob. */
+    default String hash(String name) {
+        return Hashing.hash(read(name));
+    }
+
+    /** Replaces the file NAME, if there is one, by one holding
+     * CONTENTS. */
+    void write(String name, byte[] contents);
+
+    /** Removes the file NAME, if there is one. */
+    void delete(String name);
+}
@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/** Locates the parts of a repository that several working directories
+ * share. Every working directory has a .gitlet directory of its own,
+ * holding its Repo (head branch, staging area and so on), stat cache
+ * and watcher files. A linked working directory, made by worktree add,
+ * also has there a file, commondir, naming the .gitlet directory of the
+ * main working directory, which holds everything shared: commits, blobs,
+ * references, tags, stashes and the blame index; in its Repo, the
+ * settings, remotes and the state of a shallow or partial clone; and,
+ * under worktrees/, one file per linked working directory giving the
+ * path of its .gitlet directory.
+ * @author Max Miranda */
+class Worktree {
+
+    /** Returns the .gitlet directory holding the shared parts of the
+     * repository in the current directory. */
+    static File common() {
+        String cwd = System.getProperty("user.dir");
+        if (!cwd.equals(_cwd)) {
+            File link = new File(LOCAL, COMMONDIR);
+            _common = link.isFile()
+                ? new File(Utils.readContentsAsString(link).trim())
+                : LOCAL;
+            _cwd = cwd;
+        }
+        return _common;
+    }
+
+    /** Returns true iff the current directory is a linked working
+     * directory, sharing another's .gitlet directory. */
+    static boolean isLinked() {
+        return new File(LOCAL, COMMONDIR).isFile();
+    }
+
+    /** Returns the directory holding serialized commits. */
+    static File commits() {
+        return new File(common(), "commits");
+    }
+
+    /** Returns the file holding the commit UID. */
+    static File commit(String uid) {
+        return new File(commits(), uid);
+    }
+
+    /** Returns the directory holding blobs. */
+    static File blobs() {
+        return new File(common(), "staging");
+    }
+
+    /** Returns the file holding the blob ID. */
+    static File blob(String id) {
+        return new File(blobs(), id);
+    }
+
+    /** Returns the .gitlet directory DIR, or the one it shares its
+     * objects with if it belongs to a linked working directory. */
+    static File commonOf(File dir) {
+        File link = new File(dir, COMMONDIR);
+        return link.isFile()
+            ? new File(Utils.readContentsAsString(link).trim()) : dir;
+    }
+
+    /** Returns the .gitlet directory of each working directory of the
+     * repository whose shared .gitlet directory is COMMON, keyed by
+     * name, the main one first under "". Linked working directories
+     * that have been deleted are left out. */
+    static TreeMap<String, File> all(File common) {
+        TreeMap<String, File> result = new TreeMap<String, File>();
+        result.put("", common);
+        File registry = new File(common, WORKTREES);
+        List<String> names = Utils.plainFilenamesIn(registry);
+        if (names != null) {
+            for (String name : names) {
+                File dir = new File(Utils.readContentsAsString(
+                    new File(registry, name)));
+                if (new File(dir, COMMONDIR).isFile()) {
+                    result.put(name, dir);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Creates the .gitlet directory of a new linked working directory
+     * WORK of the repository whose shared .gitlet directory is COMMON,
+     * registering it under a name derived from WORK's. Returns the new
+     * .gitlet directory. */
+    static File create(File common, File work) {
+        File registry = new File(common, WORKTREES);
+        registry.mkdirs();
+        String name = work.getName();
+        for (int n = 1; new File(registry, name).exists(); n += 1) {
+            name = work.getName() + n;
+        }
+        File local = new File(work, LOCAL.getName());
+        try {
+            local.mkdirs();
+            Utils.writeContents(new File(local, COMMONDIR),
+                                common.getCanonicalPath());
+            Utils.writeContents(new File(registry, name),
+                                local.getCanonicalPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return local;
+    }
+
+    /** Unregisters the linked working directory called NAME of the
+     * repository whose shared .gitlet directory is COMMON. */
+    static void unregister(File common, String name) {
+        new File(new File(common, WORKTREES), name).delete();
+    }
+
+    /** Unregisters every linked working directory of the repository
+     * whose shared .gitlet directory is COMMON that no longer exists,
+     * returning their names. */
+    static List<String> prune(File common) {
+        List<String> pruned = new ArrayList<String>();
+        File registry = new File(common, WORKTREES);
+        List<String> names = Utils.plainFilenamesIn(registry);
+        if (names != null) {
+            for (String name : names) {
+                File dir = new File(Utils.readContentsAsString(
+                    new File(registry, name)));
+                if (!new File(dir, COMMONDIR).isFile()) {
+                    unregister(common, name);
+                    pruned.add(name);
+                }
+            }
+        }
+        return pruned;
+    }
+
+    /** The .gitlet directory of the current directory. */
+    private static final File LOCAL = new File(".gitlet");
+
+    /** Name of the file pointing a linked .gitlet directory at the
+     * shared one. */
+    private static final String COMMONDIR = "commondir";
+
+    /** Name of the directory registering linked working directories. */
+    private static final String WORKTREES = "worktrees";
+
+    /** The directory common() was last worked out for. */
+    private static String _cwd;
+
+    /** The shared .gitlet directory of _cwd. */
+    private static File _common;
+}
@@ -0,0 +1,289 @@
+import sys, re, os, time
+from subprocess import Popen, STDOUT
+from tempfile import TemporaryFile
+from os.path import abspath, basename, dirname, exists, getsize, join
+from getopt import getopt, GetoptError
+from os import chdir, environ, getcwd, mkdir, walk
+from shutil import rmtree
+
+SHORT_USAGE = """\
+Usage: python3 scale.py OPTIONS SCENARIO.scale ...
+
+   OPTIONS may include
+       --level=L      Run at scale L: small (default), medium or large.
+       --progdir=DIR  Directory or JAR files containing gitlet application
+       --record=FILE  Append one line per timed command to FILE, as
+                      tab-separated scenario, level, command, seconds,
+                      peak RSS (MB) and .gitlet size (MB).
+       --keep         Keep scenario directories
+       --verbose      Print extra information about execution.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+For each SCENARIO.scale, change to an empty directory, build a synthetic
+repository with the generators below, and run gitlet commands against it,
+measuring the wall-clock time and peak resident set size of each, and the
+size of the .gitlet directory afterwards.  A command that fails, or that
+exceeds the budget in force, fails the scenario.  Before executing an
+instruction, replace any occurrence of ${VAR} with the value of VAR for
+the chosen level (see the D command below).
+
+The instructions each have one of the following forms:
+
+   # ...  A comment, producing no effect.
+   D VAR SMALL MEDIUM LARGE
+          Defines VAR to have the value SMALL, MEDIUM or LARGE, depending
+          on the level.
+   G files N SIZE
+          Create N files of SIZE bytes each, named f0, f1, ..., with
+          distinct contents.
+   G modify N
+          Change the contents of the files f0 ... f(N-1).
+   G add N
+          Add the files f0 ... f(N-1), in one batch.
+   G history N
+          Make N commits, in one batch, each adding one new file.
+   G churn N K
+          Make N commits, in one batch, each adding one new file and,
+          once there are K of them, removing the oldest, so that the
+          tree stays small however long the history.
+   G branches N
+          Create N branches, b0 ... b(N-1), at the head, in one batch.
+   B SEC MB
+          Set the budget for the following commands to SEC seconds and
+          MB megabytes of peak resident memory.
+   U MB   Check that the .gitlet directory takes at most MB megabytes.
+   > COMMAND OPERANDS
+          Run gitlet.Main with COMMAND OPERANDS as its parameters, timing
+          it and checking that it succeeds within the budget.
+
+Generators run gitlet too, through its batch command, but are neither
+timed nor held to a budget.  Reports the measurements of each scenario,
+and exits with a non-zero code if any scenario failed."""
+
+GITLET_COMMAND = ["java", "gitlet.Main"]
+LEVELS = ["small", "medium", "large"]
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+Mat = None
+def Match(patn, s):
+    global Mat
+    Mat = re.match(patn, s)
+    return Mat
+
+def Group(n):
+    return Mat.group(n)
+
+def createTempDir(base):
+    for n in range(100):
+        name = "{}_{}".format(base, n)
+        try:
+            mkdir(name)
+            return name
+        except OSError:
+            pass
+    else:
+        raise ValueError("could not create temp directory for {}".format(base))
+
+def runGitlet(args, dir, stdin=None):
+    """Run gitlet with ARGS in DIR, feeding it STDIN, if any.  Return its
+    exit code, its output, its wall-clock time in seconds, and its peak
+    resident set size in megabytes."""
+    with TemporaryFile("w+") as inp, TemporaryFile("w+") as out:
+        if stdin is not None:
+            inp.write(stdin)
+            inp.seek(0)
+        start = time.monotonic()
+        proc = Popen(GITLET_COMMAND + args, cwd=dir, stdin=inp, stdout=out,
+                     stderr=STDOUT, universal_newlines=True)
+        _, status, usage = os.wait4(proc.pid, 0)
+        elapsed = time.monotonic() - start
+        proc.returncode = os.waitstatus_to_exitcode(status)
+        out.seek(0)
+        return proc.returncode, out.read(), elapsed, usage.ru_maxrss / 1024
+
+def runBatch(lines, dir):
+    """Run the gitlet commands LINES in DIR as one batch."""
+    status, out, _, _ = runGitlet(["batch", "-"], dir, "\n".join(lines))
+    if status != 0:
+        raise ValueError("generator failed: {}".format(out.strip()))
+
+def diskUsage(dir):
+    """The size, in megabytes, of the files under DIR."""
+    total = 0
+    for root, _, files in walk(dir):
+        for f in files:
+            total += getsize(join(root, f))
+    return total / (1 << 20)
+
+def generate(kind, args, dir):
+    """Build part of a synthetic repository in DIR with the generator
+    KIND, given its numeric arguments ARGS."""
+    if kind == "files":
+        n, size = args
+        for i in range(n):
+            stamp = "f{} ".format(i)
+            body = (stamp * (size // len(stamp) + 1))[:size]
+            with open(join(dir, "f{}".format(i)), "w") as out:
+                out.write(body)
+    elif kind == "modify":
+        n, = args
+        for i in range(n):
+            with open(join(dir, "f{}".format(i)), "a") as out:
+                out.write("changed {}\n".format(time.time()))
+    elif kind == "add":
+        n, = args
+        runBatch(["add f{}".format(i) for i in range(n)], dir)
+    elif kind == "history":
+        n, = args
+        script = []
+        for i in range(n):
+            name = "h{}".format(i)
+            with open(join(dir, name), "w") as out:
+                out.write("history {}\n".format(i))
+            script += ["add {}".format(name), "commit 'History {}'".format(i)]
+        runBatch(script, dir)
+    elif kind == "churn":
+        n, k = args
+        script = []
+        for i in range(n):
+            name = "c{}".format(i)
+            with open(join(dir, name), "w") as out:
+                out.write("churn {}\n".format(i))
+            script += ["add {}".format(name)]
+            if i >= k:
+                script += ["rm c{}".format(i - k)]
+            script += ["commit 'Churn {}'".format(i)]
+        runBatch(script, dir)
+    elif kind == "branches":
+        n, = args
+        runBatch(["branch b{}".format(i) for i in range(n)], dir)
+    else:
+        raise ValueError("unknown generator: {}".format(kind))
+
+def doScenario(scenario):
+    base = re.sub(r'\.scale$', '', basename(scenario))
+    print("{} ({}):".format(base, level))
+    tmpdir = createTempDir(base)
+    defns = {}
+    budget = None
+    failed = False
+
+    def subst_var(M):
+        if M.group(1) in defns:
+            return defns[M.group(1)]
+        raise ValueError("undefined substitution: ${{{}}}".format(M.group(1)))
+
+    try:
+        with open(scenario) as inp:
+            lines = inp.readlines()
+        for line_num, line in enumerate(lines, 1):
+            if Match(r'\s*#', line) or Match(r'\s*$', line):
+                continue
+            line = re.sub(r'\$\{(.*?)\}', subst_var, line).strip()
+            if verbose:
+                print("+ {}".format(line))
+            if Match(r'D\s+(\w+)\s+(\S+)\s+(\S+)\s+(\S+)$', line):
+                defns[Group(1)] = Group(2 + LEVELS.index(level))
+            elif Match(r'G\s+(\w+)((?:\s+\d+)*)$', line):
+                args = [int(a) for a in Group(2).split()]
+                generate(Group(1), args, tmpdir)
+            elif Match(r'B\s+([\d.]+)\s+([\d.]+)$', line):
+                budget = (float(Group(1)), float(Group(2)))
+            elif Match(r'U\s+([\d.]+)$', line):
+                disk = diskUsage(join(tmpdir, ".gitlet"))
+                if disk > float(Group(1)):
+                    print("   ERROR (.gitlet is {:.1f} MB; budget {} MB)"
+                          .format(disk, Group(1)))
+                    failed = True
+            elif Match(r'>\s*(.*)', line):
+                cmnd = Group(1)
+                args = [a.strip("'\"") for a in
+                        re.findall(r'"[^"]*"|\'[^\']*\'|\S+', cmnd)]
+                status, out, secs, rss = runGitlet(args, tmpdir)
+                disk = diskUsage(join(tmpdir, ".gitlet"))
+                verdict = ""
+                if status != 0:
+                    verdict = "ERROR (exit code {})".format(status)
+                elif budget and secs > budget[0]:
+                    verdict = "ERROR (over {} s)".format(budget[0])
+                elif budget and rss > budget[1]:
+                    verdict = "ERROR (over {} MB)".format(budget[1])
+                print("   {:40.40} {:8.2f} s {:8.1f} MB {:9.1f} MB {}"
+                      .format(cmnd, secs, rss, disk, verdict))
+                if verbose and out:
+                    print(re.sub(r'(?m)^', '   - ', out.rstrip()))
+                if record:
+                    with open(record, "a") as log:
+                        print("\t".join([base, level, cmnd,
+                                         "{:.3f}".format(secs),
+                                         "{:.1f}".format(rss),
+                                         "{:.1f}".format(disk)]), file=log)
+                failed = failed or verdict != ""
+            else:
+                raise ValueError("bad scenario line at {}".format(line_num))
+    finally:
+        if not keep:
+            rmtree(tmpdir, ignore_errors=True)
+    return not failed
+
+if __name__ == "__main__":
+    keep = False
+    prog_dir = None
+    verbose = False
+    level = "small"
+    record = None
+
+    try:
+        opts, files = \
+            getopt(sys.argv[1:], '',
+                   ['level=', 'keep', 'progdir=', 'verbose', 'record='])
+        for opt, val in opts:
+            if opt == '--level':
+                if val not in LEVELS:
+                    Usage()
+                level = val
+            elif opt == "--keep":
+                keep = True
+            elif opt == "--progdir":
+                prog_dir = val
+            elif opt == "--verbose":
+                verbose = True
+            elif opt == "--record":
+                record = abspath(val)
+        if prog_dir is None:
+            prog_dir = dirname(abspath(getcwd()))
+        else:
+            prog_dir = abspath(prog_dir)
+    except GetoptError:
+        Usage()
+    if not files:
+        print(USAGE)
+        sys.exit(0)
+
+    environ['CLASSPATH'] = os.pathsep.join([prog_dir,
+                                            environ.get('CLASSPATH', '')])
+
+    num_scenarios = len(files)
+    errs = 0
+    for scenario in files:
+        try:
+            if not exists(scenario):
+                num_scenarios -= 1
+            elif not doScenario(scenario):
+                errs += 1
+        except ValueError as excp:
+            print("   FAILED ({})".format(excp.args[0]))
+            errs += 1
+
+    print()
+    print("Ran {} scenarios. ".format(num_scenarios), end="")
+    if errs == 0:
+        print("All within budget.")
+    else:
+        print("{} passed.".format(num_scenarios - errs))
+        sys.exit(1)